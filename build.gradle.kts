@@ -2,6 +2,7 @@ plugins {
     application
 
     id("com.github.johnrengelman.shadow") version "7.1.2"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "net.azzerial"
@@ -33,6 +34,15 @@ java {
     targetCompatibility = JavaVersion.VERSION_11
 }
 
+jmh {
+    // report the allocation rate alongside the throughput
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
+
 tasks.shadowJar {
     archiveClassifier.set("withDependencies")
     exclude("*.pom")
@@ -50,3 +60,11 @@ val run by tasks.getting(JavaExec::class) {
         }
     }
 }
+
+val loadTest by tasks.registering(JavaExec::class) {
+    description = "Loads every exchange route of a running server and reports the latency percentiles."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("net.azzerial.ska.LoadGenerator")
+    // e.g. -Pargs="http://localhost:8080 32 60 10"
+    args((findProperty("args") as String? ?: "http://localhost:8080").split(" "))
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import io.javalin.Javalin;
+import net.azzerial.skhc.enums.Region;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExchangePluginBenchmark {
+
+    private Javalin app;
+    private HttpClient client;
+    private HttpRequest market;
+    private HttpRequest marketNotModified;
+    private HttpRequest marketImage;
+    private HttpRequest marketImageTimezone;
+    private HttpRequest buyOffers;
+    private HttpRequest changes;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        final ExchangeListener exchange = new ExchangeListener();
+
+        // serve a synthetic market, as if it had been restored from the history log
+        exchange.restore(SyntheticMarkets.snapshot(1));
+        app = Javalin
+            .create(config -> {
+                config.showJavalinBanner = false;
+                config.registerPlugin(new ExchangePlugin(Map.of(Region.EU_WEST, exchange)));
+            })
+            .start(0);
+        client = HttpClient.newHttpClient();
+
+        final String base = "http://localhost:" + app.port() + "/exchange/";
+
+        market = request(base + "market");
+        marketImage = request(base + "market.png");
+        marketImageTimezone = request(base + "market.png?timezone=UTC%2B2");
+        buyOffers = request(base + "market/buyOffers");
+        changes = request(base + "market/changes?since=1");
+
+        final String etag = client.send(market, HttpResponse.BodyHandlers.discarding()).headers().firstValue("ETag").orElseThrow();
+
+        marketNotModified = HttpRequest.newBuilder(URI.create(base + "market")).header("If-None-Match", etag).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.stop();
+    }
+
+    /* Benchmarks */
+
+    @Benchmark
+    public byte[] market() throws IOException, InterruptedException {
+        return send(market);
+    }
+
+    @Benchmark
+    public byte[] marketNotModified() throws IOException, InterruptedException {
+        return send(marketNotModified);
+    }
+
+    @Benchmark
+    public byte[] marketImage() throws IOException, InterruptedException {
+        return send(marketImage);
+    }
+
+    @Benchmark
+    public byte[] marketImageTimezone() throws IOException, InterruptedException {
+        return send(marketImageTimezone);
+    }
+
+    @Benchmark
+    public byte[] buyOffers() throws IOException, InterruptedException {
+        return send(buyOffers);
+    }
+
+    @Benchmark
+    public byte[] changes() throws IOException, InterruptedException {
+        return send(changes);
+    }
+
+    /* Internal */
+
+    private byte[] send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+
+    private static HttpRequest request(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri)).build();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    private MarketSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+        snapshot = SyntheticMarkets.snapshot(1);
+    }
+
+    /* Benchmarks */
+
+    @Benchmark
+    public MarketPayloads payloads() {
+        return MarketPayloads.of(snapshot);
+    }
+
+    @Benchmark
+    public Payload changes() {
+        final MarketChanges changes = new MarketChanges();
+
+        changes.onMarketSnapshot(snapshot);
+        changes.onMarketSnapshot(SyntheticMarkets.snapshot(2));
+        return changes.get(1);
+    }
+}
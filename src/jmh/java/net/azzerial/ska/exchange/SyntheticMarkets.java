@@ -0,0 +1,45 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+final class SyntheticMarkets {
+
+    /* Constructors */
+
+    private SyntheticMarkets() {}
+
+    /* Methods */
+
+    static MarketSnapshot snapshot(long version) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int lastPrice = 4_000 + random.nextInt(2_000);
+        final int[] buyPrices = new int[MarketSnapshot.DEPTH];
+        final int[] buyVolumes = new int[MarketSnapshot.DEPTH];
+        final int[] sellPrices = new int[MarketSnapshot.DEPTH];
+        final int[] sellVolumes = new int[MarketSnapshot.DEPTH];
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            buyPrices[i] = lastPrice - 10 - (i * random.nextInt(1, 20));
+            buyVolumes[i] = random.nextInt(1, 100_000);
+            sellPrices[i] = lastPrice + 10 + (i * random.nextInt(1, 20));
+            sellVolumes[i] = random.nextInt(1, 100_000);
+        }
+        return new MarketSnapshot(version, System.currentTimeMillis(), lastPrice, buyPrices, buyVolumes, sellPrices, sellVolumes);
+    }
+}
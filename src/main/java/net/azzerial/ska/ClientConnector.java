@@ -0,0 +1,105 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska;
+
+import net.azzerial.skhc.SKClient;
+import net.azzerial.skhc.SKClientBuilder;
+import net.azzerial.skhc.enums.Language;
+import net.azzerial.skhc.enums.Region;
+import net.azzerial.skhc.events.ListenerAdapter;
+import net.azzerial.skhc.services.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.login.LoginException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class ClientConnector implements MarketSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientConnector.class);
+
+    // the delays between two connection attempts
+    private static final long INITIAL_BACKOFF = 1_000;
+    private static final long MAX_BACKOFF = 300_000;
+
+    private final String username;
+    private final String password;
+    private final Region region;
+    private final ListenerAdapter[] listeners;
+    // keeps the connected client reachable
+    private volatile SKClient client;
+
+    /* Constructors */
+
+    public ClientConnector(String username, String password, Region region, ListenerAdapter... listeners) {
+        this.username = username;
+        this.password = password;
+        this.region = region;
+        this.listeners = listeners;
+    }
+
+    /* Methods */
+
+    @Override
+    public void start() {
+        final Thread thread = new Thread(this::connect, "client-connector-" + region.name().toLowerCase(Locale.ROOT));
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /* Internal */
+
+    private void connect() {
+        long backoff = INITIAL_BACKOFF;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // create the SKClient
+                final SKClient client = SKClientBuilder.create(username, password)
+                    .setRegion(region)
+                    .setLanguage(Language.ENGLISH)
+                    .enableServices(Service.EXCHANGE)
+                    .build();
+
+                // register the event listeners
+                for (ListenerAdapter listener : listeners) {
+                    client.addEventListeners(listener);
+                }
+
+                // bring the client online
+                if (!client.connect()) {
+                    log.warn("Client for {} is already connected", region);
+                }
+                this.client = client;
+                log.info("Client for {} connected", region);
+                return;
+            } catch (LoginException | RuntimeException e) {
+                log.error("Client connection for {} failed, retrying in {} ms: {}", region, backoff, e.getMessage());
+            }
+
+            try {
+                // add some jitter so that restarts don't hammer the login servers in sync
+                Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 4 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+    }
+}
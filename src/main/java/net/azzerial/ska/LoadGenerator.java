@@ -0,0 +1,343 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class LoadGenerator {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    // the percentiles reported for each route
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    // the webhook of the alerts registered by the load, which never trigger
+    private static final String DEFAULT_WEBHOOK = "https://example.com/";
+    private static final Pattern ALERT_ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+
+    private final String base;
+    private final int concurrency;
+    private final long warmup;
+    private final long duration;
+    private final String alert;
+    private final HttpClient client = HttpClient.newBuilder()
+        .connectTimeout(REQUEST_TIMEOUT)
+        .build();
+    private final List<Scenario> scenarios = new ArrayList<>();
+
+    /* Constructors */
+
+    private LoadGenerator(String base, int concurrency, long warmup, long duration, String webhook) {
+        this.base = base.endsWith("/") ? base : base + "/";
+        this.concurrency = concurrency;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.alert = "{\"field\":\"lastPrice\",\"direction\":\"above\",\"threshold\":2000000000,\"webhook\":\"" + webhook + "\"}";
+
+        // every route of the exchange plugin, along with the variants taking a different path
+        get("market", "exchange/market");
+        get("market (protobuf)", "exchange/market", "Accept", "application/x-protobuf");
+        get("market (gzip)", "exchange/market", "Accept-Encoding", "gzip");
+        scenarios.add(this::marketNotModified);
+        get("market.png", "exchange/market.png");
+        get("market.png (timezone)", "exchange/market.png?timezone=Europe/Paris");
+        get("market.png (jpeg 640)", "exchange/market.png?format=jpeg&width=640");
+        get("market.png (svg)", "exchange/market.png?format=svg");
+        get("market/lastPrice", "exchange/market/lastPrice");
+        get("market/buyOffers", "exchange/market/buyOffers");
+        get("market/sellOffers", "exchange/market/sellOffers");
+        get("market/changes", "exchange/market/changes?since=1");
+        scenarios.add(this::marketStream);
+        get("history", "exchange/history");
+        get("analytics", "exchange/analytics");
+        get("regions", "exchange/regions");
+        get("market.proto", "exchange/market.proto");
+        scenarios.add(this::alerts);
+    }
+
+    /* Methods */
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: LoadGenerator <base url> [concurrency (16)] [duration in seconds (30)] [warmup in seconds (5)] [alerts webhook (" + DEFAULT_WEBHOOK + ")]");
+            System.exit(1);
+        }
+
+        final int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        final long duration = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 30).toNanos();
+        final long warmup = Duration.ofSeconds(args.length > 3 ? Long.parseLong(args[3]) : 5).toNanos();
+
+        final String webhook = args.length > 4 ? args[4] : DEFAULT_WEBHOOK;
+
+        new LoadGenerator(args[0], concurrency, warmup, duration, webhook).run();
+    }
+
+    /* Internal */
+
+    private void run() throws InterruptedException {
+        final Worker[] workers = new Worker[concurrency];
+        final Thread[] threads = new Thread[concurrency];
+        final long start = System.nanoTime();
+
+        System.out.printf("Loading %s with %d workers for %d s, after a %d s warmup%n", base, concurrency, duration / 1_000_000_000, warmup / 1_000_000_000);
+        for (int i = 0; i != concurrency; i++) {
+            workers[i] = new Worker(start + warmup, start + warmup + duration, i);
+            threads[i] = new Thread(workers[i], "load-worker-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // merge the recordings of the workers, per route
+        final Map<String, Recording> recordings = new TreeMap<>();
+        final Recording total = new Recording();
+
+        for (Worker worker : workers) {
+            worker.recordings.forEach((name, recording) -> {
+                recordings.computeIfAbsent(name, key -> new Recording()).addAll(recording);
+                total.addAll(recording);
+            });
+        }
+        report(recordings, total);
+    }
+
+    private void report(Map<String, Recording> recordings, Recording total) {
+        final double seconds = duration / 1e9;
+
+        System.out.printf("%n%-24s %9s %7s %9s", "route", "requests", "errors", "req/s");
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %9s", "p" + (percentile == (long) percentile ? Long.toString((long) percentile) : Double.toString(percentile)));
+        }
+        System.out.printf(" %9s%n", "max");
+
+        recordings.forEach((name, recording) -> report(name, recording, seconds));
+        report("total", total, seconds);
+        System.out.println("\nLatencies in milliseconds, the errors are failed requests and 4xx/5xx responses.");
+    }
+
+    private static void report(String name, Recording recording, double seconds) {
+        final long[] latencies = recording.sorted();
+
+        System.out.printf("%-24s %9d %7d %9.1f", name, latencies.length, recording.errors, latencies.length / seconds);
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %9s", millis(latencies, percentile));
+        }
+        System.out.printf(" %9s%n", millis(latencies, 100));
+    }
+
+    private void get(String name, String path, String... headers) {
+        scenarios.add(worker -> {
+            final HttpRequest.Builder request = request(path);
+
+            for (int i = 0; i + 1 < headers.length; i += 2) {
+                request.header(headers[i], headers[i + 1]);
+            }
+            worker.send(name, request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        });
+    }
+
+    private void marketNotModified(Worker worker) throws IOException, InterruptedException {
+        // the market changes on every update, keep the tag of the last one seen
+        if (worker.etag == null) {
+            final HttpResponse<Void> response = client.send(request("exchange/market").build(), HttpResponse.BodyHandlers.discarding());
+
+            worker.etag = response.headers().firstValue("ETag").orElse("\"\"");
+        }
+
+        final HttpResponse<byte[]> response = worker.send("market (not modified)", request("exchange/market").header("If-None-Match", worker.etag).build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        if (response != null && response.statusCode() != 304) {
+            worker.etag = response.headers().firstValue("ETag").orElse(null);
+        }
+    }
+
+    private void marketStream(Worker worker) throws InterruptedException {
+        // the subscription latency, until the current market is pushed
+        final long start = System.nanoTime();
+
+        try {
+            final HttpResponse<InputStream> response = client.send(request("exchange/market/stream").build(), HttpResponse.BodyHandlers.ofInputStream());
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                String line;
+
+                while ((line = reader.readLine()) != null && !line.startsWith("data:")) {
+                    // skip to the first event
+                }
+                worker.record("market/stream", start, response.statusCode() < 400 && line != null);
+            }
+        } catch (IOException e) {
+            worker.record("market/stream", start, false);
+        }
+    }
+
+    private void alerts(Worker worker) throws InterruptedException {
+        final HttpResponse<byte[]> created = worker.send("alerts (create)", request("exchange/alerts")
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(alert))
+            .build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        if (created == null) {
+            return;
+        }
+
+        final Matcher matcher = ALERT_ID.matcher(new String(created.body(), StandardCharsets.UTF_8));
+
+        if (!matcher.find()) {
+            return;
+        }
+
+        final String path = "exchange/alerts/" + matcher.group(1);
+
+        worker.send("alerts (get)", request(path).build(), HttpResponse.BodyHandlers.ofByteArray());
+        worker.send("alerts (delete)", request(path).DELETE().build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(REQUEST_TIMEOUT);
+    }
+
+    private static String millis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return "-";
+        }
+
+        final int index = (int) Math.ceil((percentile / 100) * sorted.length) - 1;
+
+        return String.format("%.2f", sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6);
+    }
+
+    @FunctionalInterface
+    private interface Scenario {
+
+        void run(Worker worker) throws IOException, InterruptedException;
+    }
+
+    private final class Worker implements Runnable {
+
+        private final long recordFrom;
+        private final long end;
+        private final int offset;
+        private final Map<String, Recording> recordings = new LinkedHashMap<>();
+        private String etag;
+
+        /* Constructors */
+
+        private Worker(long recordFrom, long end, int offset) {
+            this.recordFrom = recordFrom;
+            this.end = end;
+            this.offset = offset;
+        }
+
+        /* Methods */
+
+        @Override
+        public void run() {
+            // the workers start at different scenarios, every route is loaded concurrently
+            int index = offset;
+
+            try {
+                while (System.nanoTime() < end) {
+                    try {
+                        scenarios.get(index++ % scenarios.size()).run(this);
+                    } catch (IOException e) {
+                        // recorded as an error by the scenario
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private <T> HttpResponse<T> send(String name, HttpRequest request, HttpResponse.BodyHandler<T> handler) throws InterruptedException {
+            final long start = System.nanoTime();
+
+            try {
+                final HttpResponse<T> response = client.send(request, handler);
+
+                record(name, start, response.statusCode() < 400);
+                return response;
+            } catch (IOException e) {
+                record(name, start, false);
+                return null;
+            }
+        }
+
+        private void record(String name, long start, boolean success) {
+            final long now = System.nanoTime();
+
+            // the warmup and the requests overflowing the run aren't part of the results
+            if (start < recordFrom || now > end) {
+                return;
+            }
+
+            final Recording recording = recordings.computeIfAbsent(name, key -> new Recording());
+
+            if (success) {
+                recording.add(now - start);
+            } else {
+                recording.errors++;
+            }
+        }
+    }
+
+    private static final class Recording {
+
+        private long[] latencies = new long[1024];
+        private int size;
+        private long errors;
+
+        /* Methods */
+
+        private void add(long latency) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latency;
+        }
+
+        private void addAll(Recording other) {
+            for (int i = 0; i != other.size; i++) {
+                add(other.latencies[i]);
+            }
+            errors += other.errors;
+        }
+
+        private long[] sorted() {
+            final long[] sorted = Arrays.copyOf(latencies, size);
+
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -21,48 +21,53 @@ import io.javalin.openapi.plugin.OpenApiPlugin;
 import io.javalin.openapi.plugin.swagger.SwaggerPlugin;
 import net.azzerial.ska.exchange.ExchangeListener;
 import net.azzerial.ska.exchange.ExchangePlugin;
-import net.azzerial.skhc.SKClient;
-import net.azzerial.skhc.SKClientBuilder;
-import net.azzerial.skhc.enums.Language;
+import net.azzerial.ska.exchange.MarketSnapshot;
+import net.azzerial.ska.exchange.history.HistoryLog;
+import net.azzerial.ska.metrics.MetricsPlugin;
 import net.azzerial.skhc.enums.Region;
-import net.azzerial.skhc.services.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public final class Main {
 
     private static final Logger log = LoggerFactory.getLogger("net.azzerial.ska");
 
-    private static final SKClient client;
+    // where the markets come from: the game client, a replay of recorded markets or synthetic ones
+    private static final String SOURCE = env("SPIRAL_KNIGHTS_SOURCE", "client").toLowerCase(Locale.ROOT);
 
-    // this listener gives access to the current market object
-    public static final ExchangeListener exchange = new ExchangeListener();
+    // these listeners give access to the current market object of each region
+    public static final Map<Region, ExchangeListener> exchanges;
 
     static {
-        final String username = System.getenv("SPIRAL_KNIGHTS_USERNAME");
-        final String password = System.getenv("SPIRAL_KNIGHTS_PASSWORD");
+        final String regions = env("SPIRAL_KNIGHTS_REGIONS", Region.EU_WEST.name());
+        final String dataDirectory = env("SPIRAL_KNIGHTS_DATA_DIRECTORY", "data");
+        final Map<Region, ExchangeListener> listeners = new LinkedHashMap<>();
+
+        for (String name : regions.split(",")) {
+            // tolerate the trailing and doubled commas
+            if (name.isBlank()) {
+                continue;
+            }
 
-        try {
-            // create the SKClient
-            client = SKClientBuilder.create(username, password)
-                .setRegion(Region.EU_WEST)
-                .setLanguage(Language.ENGLISH)
-                .enableServices(Service.EXCHANGE)
-                .build();
-
-            // register the event listeners
-            client.addEventListeners(exchange);
-
-            // bring the client online
-            if (!client.connect()) {
-                throw new ExceptionInInitializerError("This client is already connected!");
+            final Region region = Region.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            final ExchangeListener exchange = new ExchangeListener();
+
+            // restore the persisted market history before going online, the offline sources leave it untouched
+            if (SOURCE.equals("client")) {
+                restore(exchange, Path.of(dataDirectory, region.name().toLowerCase(Locale.ROOT)));
             }
-        } catch (LoginException e) {
-            log.error("Client connection failed: {}", e.getMessage());
-            throw new ExceptionInInitializerError(e);
+            listeners.put(region, exchange);
         }
+        exchanges = Collections.unmodifiableMap(listeners);
     }
 
     /* Constructors */
@@ -72,13 +77,19 @@ public final class Main {
     /* Methods */
 
     public static void main(String[] args) {
+        // create the market sources first, a misconfigured one fails before the webserver starts
+        final List<MarketSource> sources = new ArrayList<>();
+
+        exchanges.forEach((region, exchange) -> sources.add(source(region, exchange)));
+
         // create and start the Javalin webserver
         Javalin
             .create(config -> {
                 config.showJavalinBanner = false;
 
                 // register the routing plugins
-                config.registerPlugin(new ExchangePlugin());
+                config.registerPlugin(new ExchangePlugin(exchanges));
+                config.registerPlugin(new MetricsPlugin(exchanges));
 
                 // register the documentation plugins
                 final String docsPath = "/openapi.json";
@@ -103,5 +114,57 @@ public final class Main {
                 }));
             })
             .start(8080);
+
+        // bring the sources online in the background, the routes serve the restored markets meanwhile
+        sources.forEach(MarketSource::start);
+    }
+
+    /* Internal */
+
+    private static MarketSource source(Region region, ExchangeListener exchange) {
+        final String directory = region.name().toLowerCase(Locale.ROOT);
+        final double rate = Double.parseDouble(env("SPIRAL_KNIGHTS_REPLAY_RATE", "0"));
+
+        switch (SOURCE) {
+            case "client":
+                return new ClientConnector(System.getenv("SPIRAL_KNIGHTS_USERNAME"), System.getenv("SPIRAL_KNIGHTS_PASSWORD"), region, exchange);
+            case "replay":
+                final String replayDirectory = env("SPIRAL_KNIGHTS_REPLAY_DIRECTORY", env("SPIRAL_KNIGHTS_DATA_DIRECTORY", "data"));
+
+                return new ReplaySource(region, Path.of(replayDirectory, directory), rate, exchange);
+            case "synthetic":
+                return new ReplaySource(region, null, rate, exchange);
+            default:
+                throw new IllegalArgumentException("Unknown market source '" + SOURCE + "', expected one of client, replay, synthetic");
+        }
+    }
+
+    private static String env(String name, String defaultValue) {
+        final String value = System.getenv(name);
+
+        // the variables left empty in the env file take their default value
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    private static void restore(ExchangeListener exchange, Path directory) {
+        final HistoryLog historyLog = new HistoryLog(directory);
+
+        try {
+            final MarketSnapshot snapshot = historyLog.replay(exchange.history);
+
+            if (snapshot != null) {
+                exchange.restore(snapshot);
+            }
+            exchange.addConsumers(historyLog);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    historyLog.close();
+                } catch (IOException e) {
+                    log.warn("History log close failed: {}", e.getMessage());
+                }
+            }, "history-log-shutdown"));
+        } catch (IOException e) {
+            log.error("History replay from {} failed, market updates won't be persisted: {}", directory, e.getMessage());
+        }
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska;
+
+import net.azzerial.ska.exchange.ExchangeListener;
+import net.azzerial.ska.exchange.MarketSnapshot;
+import net.azzerial.ska.exchange.history.HistoryLog;
+import net.azzerial.skhc.enums.Region;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+public final class ReplaySource implements MarketSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplaySource.class);
+
+    // the interval between two live market updates, used by the synthetic markets at the recorded pace
+    private static final long LIVE_INTERVAL = 2_500_000_000L;
+    // the longest pause kept when replaying at the recorded pace, the recordings have gaps across restarts
+    private static final long MAX_RECORDED_INTERVAL = 10_000_000_000L;
+    // how far behind its schedule the replay may fall before the missed updates are forgotten
+    private static final long MAX_LAG = 1_000_000_000L;
+    // the interval between two throughput reports
+    private static final long REPORT_INTERVAL = 10_000_000_000L;
+    // the price the synthetic market drifts around
+    private static final int SYNTHETIC_PRICE = 5_000;
+
+    private final Region region;
+    private final Path recording;
+    private final double rate;
+    private final ExchangeListener exchange;
+    // pacing state, only touched by the replay thread
+    private long deadline;
+    private long previousReceivedAt;
+    private long reportedAt;
+    private long offered;
+    private long reportedVersion;
+
+    /* Constructors */
+
+    // replays the history log segments of the recording directory, or synthetic markets when none is given,
+    // at the given amount of updates per second or at the recorded pace when it isn't positive
+    public ReplaySource(Region region, @Nullable Path recording, double rate, ExchangeListener exchange) {
+        this.region = region;
+        this.recording = recording;
+        this.rate = rate;
+        this.exchange = exchange;
+    }
+
+    /* Methods */
+
+    @Override
+    public void start() {
+        final Thread thread = new Thread(this::run, "market-replay-" + region.name().toLowerCase(Locale.ROOT));
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /* Internal */
+
+    private void run() {
+        deadline = System.nanoTime();
+        reportedAt = deadline;
+        reportedVersion = exchange.getSnapshot() == null ? 0 : exchange.getSnapshot().getVersion();
+
+        if (recording == null) {
+            log.info("Publishing synthetic markets to {} at {}", region, rate > 0 ? rate + " updates/s" : "the live pace");
+            synthesize();
+            return;
+        }
+
+        log.info("Replaying the markets recorded in {} to {} at {}", recording, region, rate > 0 ? rate + " updates/s" : "the recorded pace");
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // loop over the recording, the load lasts as long as the process
+                if (HistoryLog.read(recording, this::publish) == 0) {
+                    log.error("No market records found in {}, nothing to replay to {}", recording, region);
+                    return;
+                }
+            } catch (IOException e) {
+                log.error("Market replay from {} failed: {}", recording, e.getMessage());
+                return;
+            }
+            previousReceivedAt = 0;
+        }
+    }
+
+    private void synthesize() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int[] buyPrices = new int[MarketSnapshot.DEPTH];
+        final int[] buyVolumes = new int[MarketSnapshot.DEPTH];
+        final int[] sellPrices = new int[MarketSnapshot.DEPTH];
+        final int[] sellVolumes = new int[MarketSnapshot.DEPTH];
+        int lastPrice = SYNTHETIC_PRICE;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            // a random walk, pulled back towards the base price
+            lastPrice = Math.max(100, lastPrice + random.nextInt(-20, 21) + ((SYNTHETIC_PRICE - lastPrice) / 100));
+            for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+                buyPrices[i] = lastPrice - 10 - (i * random.nextInt(1, 20));
+                buyVolumes[i] = random.nextInt(1, 100_000);
+                sellPrices[i] = lastPrice + 10 + (i * random.nextInt(1, 20));
+                sellVolumes[i] = random.nextInt(1, 100_000);
+            }
+            pace(LIVE_INTERVAL);
+            publish(new MarketSnapshot(0, System.currentTimeMillis(), lastPrice, buyPrices, buyVolumes, sellPrices, sellVolumes));
+        }
+    }
+
+    private void publish(MarketSnapshot market) {
+        if (recording != null) {
+            final long interval = previousReceivedAt == 0 ? 0 : (market.getReceivedAt() - previousReceivedAt) * 1_000_000;
+
+            previousReceivedAt = market.getReceivedAt();
+            pace(Math.max(0, Math.min(interval, MAX_RECORDED_INTERVAL)));
+        }
+        exchange.onMarket(market);
+        offered++;
+
+        // tell whether the requested rate is reached, and how much of it the listener actually published
+        final long now = System.nanoTime();
+
+        if (now - reportedAt >= REPORT_INTERVAL) {
+            final MarketSnapshot snapshot = exchange.getSnapshot();
+            final long version = snapshot == null ? 0 : snapshot.getVersion();
+
+            log.info("Offered {} markets to {} in {} ms, {} published", offered, region, (now - reportedAt) / 1_000_000, version - reportedVersion);
+            reportedAt = now;
+            reportedVersion = version;
+            offered = 0;
+        }
+    }
+
+    private void pace(long recordedInterval) {
+        deadline += rate > 0 ? (long) (1_000_000_000 / rate) : recordedInterval;
+
+        final long now = System.nanoTime();
+
+        // a slow listener only delays the schedule, it doesn't cause a burst once it catches up
+        if (now - deadline > MAX_LAG) {
+            deadline = now;
+            return;
+        }
+        while (deadline - System.nanoTime() > 0) {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+}
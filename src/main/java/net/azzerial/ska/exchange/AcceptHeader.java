@@ -0,0 +1,79 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import org.jetbrains.annotations.Nullable;
+
+final class AcceptHeader {
+
+    /* Constructors */
+
+    private AcceptHeader() {}
+
+    /* Methods */
+
+    // the highest quality given to one of the values, -1 when none of them is listed
+    static double quality(@Nullable String header, String... values) {
+        double quality = -1;
+
+        if (header == null) {
+            return quality;
+        }
+        for (String entry : header.split(",")) {
+            final String[] parts = entry.split(";");
+            final String name = parts[0].trim();
+
+            for (String value : values) {
+                if (name.equalsIgnoreCase(value)) {
+                    quality = Math.max(quality, quality(parts));
+                    break;
+                }
+            }
+        }
+        return quality;
+    }
+
+    // the quality of the most specific entry matching the media type, -1 when none of them is listed
+    static double mediaQuality(@Nullable String header, String mediaType) {
+        final double quality = quality(header, mediaType);
+
+        if (quality >= 0) {
+            return quality;
+        }
+
+        final double subtypes = quality(header, mediaType.substring(0, mediaType.indexOf('/')) + "/*");
+
+        return subtypes >= 0 ? subtypes : quality(header, "*/*");
+    }
+
+    /* Internal */
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            final String parameter = parts[i].trim();
+
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException ignored) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
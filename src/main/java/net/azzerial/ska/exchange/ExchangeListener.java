@@ -16,25 +16,258 @@
 
 package net.azzerial.ska.exchange;
 
-import net.azzerial.skhc.entities.Market;
+import net.azzerial.ska.exchange.alert.MarketAlerts;
+import net.azzerial.ska.exchange.history.MarketHistory;
+import net.azzerial.ska.metrics.Counter;
+import net.azzerial.ska.metrics.LatencyHistogram;
+import net.azzerial.ska.metrics.Metrics;
 import net.azzerial.skhc.events.ListenerAdapter;
 import net.azzerial.skhc.events.exchange.ExchangeEvent;
 import net.azzerial.skhc.events.exchange.ExchangeUpdateEvent;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 public final class ExchangeListener extends ListenerAdapter {
 
-    public Market market;
+    private static final Logger log = LoggerFactory.getLogger(ExchangeListener.class);
+
+    // the markets received but not yet published, only the newest one is, the others absorb the writes racing its read
+    private static final int EVENT_RING_CAPACITY = 1 << 4;
+    // the snapshots published but not yet consumed, kept small since they retain their encoded images
+    private static final int SNAPSHOT_RING_CAPACITY = 1 << 6;
+    // metrics
+    private static final LatencyHistogram EVENT_INTERVAL = Metrics.histogram("ska_market_event_interval_seconds", "Time elapsed between two consecutive market events.");
+    private static final LatencyHistogram EVENT_LATENCY = Metrics.histogram("ska_market_event_handling_seconds", "Time spent handling a market event on the client event thread.");
+    private static final LatencyHistogram PUBLISH_LATENCY = Metrics.histogram("ska_market_publish_seconds", "Time spent preparing and publishing a market snapshot.");
+    private static final Counter DROPPED_EVENTS = Metrics.counter("ska_market_events_dropped_total", "Market events superseded by a newer one before being published.");
+    private static final Map<String, Counter> DROPPED_SNAPSHOTS = new ConcurrentHashMap<>();
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    // the retained frame of the market images, each market draws its own
+    private final MarketRenderer renderer = new MarketRenderer();
+    private final MarketRing events = new MarketRing(EVENT_RING_CAPACITY, renderer);
+    private final MarketSnapshot[] snapshots = new MarketSnapshot[SNAPSHOT_RING_CAPACITY];
+    private final AtomicReference<MarketSnapshot> snapshot = new AtomicReference<>();
+    private final List<ConsumerThread> consumers = new CopyOnWriteArrayList<>();
+    private final Thread publisher;
+    // the version of the last published snapshot, the consumers catch up with it
+    private volatile long published;
+    // the arrival of the last market event, only touched by the thread delivering them
+    private long receivedAt;
+
+    public final MarketChanges changes = new MarketChanges();
+    public final MarketHistory history = new MarketHistory();
+    public final MarketAnalytics analytics = new MarketAnalytics();
+    public final MarketAlerts alerts = new MarketAlerts();
+
+    /* Constructors */
+
+    public ExchangeListener() {
+        this.publisher = new Thread(this::publish, "market-publisher-" + THREADS.incrementAndGet());
+        publisher.setDaemon(true);
+        publisher.start();
+        addConsumers(changes, history, analytics, alerts);
+    }
+
+    /* Getters */
+
+    public MarketSnapshot getSnapshot() {
+        return snapshot.get();
+    }
 
     /* Methods */
 
+    public void addConsumers(MarketConsumer... consumers) {
+        for (MarketConsumer consumer : consumers) {
+            final ConsumerThread thread = new ConsumerThread(consumer, published);
+
+            this.consumers.add(thread);
+            thread.start();
+        }
+    }
+
     @Override
     public void onExchange(@NotNull ExchangeEvent event) {
-        this.market = event.getMarket();
+        final long start = System.nanoTime();
+
+        recordInterval(start);
+        events.write(System.currentTimeMillis(), event.getMarket());
+        LockSupport.unpark(publisher);
+        EVENT_LATENCY.recordSince(start);
     }
 
     @Override
     public void onExchangeUpdate(@NotNull ExchangeUpdateEvent event) {
-        this.market = event.getMarket();
+        final long start = System.nanoTime();
+
+        recordInterval(start);
+        events.write(System.currentTimeMillis(), event.getMarket());
+        LockSupport.unpark(publisher);
+        EVENT_LATENCY.recordSince(start);
+    }
+
+    public void onMarket(MarketSnapshot market) {
+        final long start = System.nanoTime();
+
+        recordInterval(start);
+
+        // the markets of the other sources are published as if they had just been received
+        events.write(System.currentTimeMillis(), market);
+        LockSupport.unpark(publisher);
+        EVENT_LATENCY.recordSince(start);
+    }
+
+    public void restore(MarketSnapshot snapshot) {
+        // only restore into a listener that hasn't received any market yet
+        if (this.snapshot.compareAndSet(null, snapshot)) {
+            changes.onMarketSnapshot(snapshot);
+            analytics.onMarketSnapshot(snapshot);
+
+            // the next versions follow the restored one, the consumers have nothing to catch up with
+            for (ConsumerThread consumer : consumers) {
+                consumer.sequence = snapshot.getVersion();
+            }
+            published = snapshot.getVersion();
+        }
+    }
+
+    /* Internal */
+
+    private void recordInterval(long now) {
+        if (receivedAt != 0) {
+            EVENT_INTERVAL.record(now - receivedAt);
+        }
+        receivedAt = now;
+    }
+
+    private void publish() {
+        long next = 0;
+
+        // the event thread only copies the markets into the ring, they are published from here
+        while (true) {
+            final long cursor = events.getCursor();
+
+            if (cursor < next) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            // the newest market supersedes the pending ones, a slow publish never leaves the feed lagging behind
+            DROPPED_EVENTS.add(cursor - next);
+            next = cursor + 1;
+
+            final MarketSnapshot snapshot = events.read(cursor, published + 1);
+
+            // overwritten while being read, a newer market is pending
+            if (snapshot == null) {
+                DROPPED_EVENTS.increment();
+                continue;
+            }
+            publish(snapshot);
+        }
+    }
+
+    private void publish(MarketSnapshot snapshot) {
+        final long start = System.nanoTime();
+
+        // serialize the common representations before publishing the snapshot, they are compressed on first use
+        try {
+            snapshot.getPayloads();
+        } catch (RuntimeException e) {
+            log.error("Failed to prepare snapshot #{}", snapshot.getVersion(), e);
+        }
+        snapshot.getImages().prepare();
+        this.snapshot.set(snapshot);
+
+        // wait for the durable consumers to handle the snapshot about to be overwritten, the markets received meanwhile are coalesced
+        final long overwritten = snapshot.getVersion() - SNAPSHOT_RING_CAPACITY;
+
+        for (ConsumerThread consumer : consumers) {
+            while (consumer.durable && consumer.sequence < overwritten) {
+                LockSupport.park(this);
+            }
+        }
+        snapshots[(int) snapshot.getVersion() & (SNAPSHOT_RING_CAPACITY - 1)] = snapshot;
+        published = snapshot.getVersion();
+        PUBLISH_LATENCY.recordSince(start);
+
+        // wake the consumers from here, whatever their amount the event thread doesn't pay for them
+        for (ConsumerThread consumer : consumers) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private final class ConsumerThread extends Thread {
+
+        private final MarketConsumer consumer;
+        private final boolean durable;
+        private final Counter dropped;
+        // the version of the last snapshot handled by the consumer
+        private volatile long sequence;
+
+        /* Constructors */
+
+        private ConsumerThread(MarketConsumer consumer, long sequence) {
+            super("market-consumer-" + consumer.getClass().getSimpleName() + "-" + THREADS.incrementAndGet());
+            this.consumer = consumer;
+            this.durable = consumer.isDurable();
+            this.dropped = DROPPED_SNAPSHOTS.computeIfAbsent(consumer.getClass().getSimpleName(), name ->
+                Metrics.counter("ska_market_consumer_dropped_total", "Market snapshots skipped by a consumer lagging behind.", "consumer", name)
+            );
+            this.sequence = sequence;
+            setDaemon(true);
+        }
+
+        /* Methods */
+
+        @Override
+        public void run() {
+            while (true) {
+                final long published = ExchangeListener.this.published;
+                long next = sequence + 1;
+
+                if (published < next) {
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                // a slow consumer only skips snapshots, only the durable ones hold back the publisher
+                if (published - next >= SNAPSHOT_RING_CAPACITY) {
+                    dropped.add(published - SNAPSHOT_RING_CAPACITY + 1 - next);
+                    next = published - SNAPSHOT_RING_CAPACITY + 1;
+                }
+
+                // handle the whole batch available
+                for (; next <= published; next++) {
+                    final MarketSnapshot snapshot = snapshots[(int) next & (SNAPSHOT_RING_CAPACITY - 1)];
+
+                    // overwritten since the published version was read
+                    if (snapshot == null || snapshot.getVersion() != next) {
+                        dropped.increment();
+                    } else {
+                        try {
+                            consumer.onMarketSnapshot(snapshot);
+                        } catch (RuntimeException e) {
+                            log.error("Market consumer failed to handle snapshot #{}", snapshot.getVersion(), e);
+                        }
+                    }
+                    sequence = next;
+
+                    // the publisher may be waiting on this consumer
+                    if (durable) {
+                        LockSupport.unpark(publisher);
+                    }
+                }
+            }
+        }
     }
 }
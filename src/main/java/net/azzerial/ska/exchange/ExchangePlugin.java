@@ -19,28 +19,93 @@ package net.azzerial.ska.exchange;
 import io.javalin.config.JavalinConfig;
 import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
+import io.javalin.http.sse.SseClient;
 import io.javalin.openapi.*;
 import io.javalin.plugin.Plugin;
+import net.azzerial.ska.exchange.alert.Alert;
 import net.azzerial.skhc.entities.Market;
 import net.azzerial.skhc.entities.Offer;
+import net.azzerial.skhc.enums.Region;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZoneId;
-
-import static net.azzerial.ska.Main.exchange;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 public final class ExchangePlugin extends Plugin<Void> {
 
+    // the delay advised to clients when no market is available, in seconds
+    private static final long RETRY_AFTER = 5;
+    // the delay advised to clients when the image renderer is overloaded, in seconds
+    private static final long RENDER_RETRY_AFTER = 1;
+    // history query defaults and limits
+    private static final long DEFAULT_HISTORY_RANGE = Duration.ofDays(1).toMillis();
+    private static final long DEFAULT_HISTORY_STEP = Duration.ofMinutes(5).toMillis();
+    private static final int MAX_HISTORY_CANDLES = 10_000;
+    // the maximum amount of parsed timezones kept
+    private static final int MAX_ZONES = 1024;
+
+    private final Map<Region, ExchangeListener> exchanges;
+    private final Map<Region, ExchangeStream> streams = new LinkedHashMap<>();
+    private final ExchangeRegions regions;
+    private final Region defaultRegion;
+    private final Payload schema;
+    private final Map<String, ZoneId> zones = new ConcurrentHashMap<>();
+
+    /* Constructors */
+
+    public ExchangePlugin(Map<Region, ExchangeListener> exchanges) {
+        this.exchanges = exchanges;
+        this.regions = new ExchangeRegions(exchanges);
+        this.defaultRegion = exchanges.keySet().iterator().next();
+        this.schema = schema();
+    }
+
+    /* Methods */
+
     @Override
     public void onInitialize(@NotNull JavalinConfig config) {
-        // register routes to serve the exchange market object
+        // push the market updates to the stream subscribers
+        exchanges.forEach((region, exchange) -> {
+            final ExchangeStream stream = new ExchangeStream();
+
+            exchange.addConsumers(stream);
+            streams.put(region, stream);
+        });
+
+        // register routes to serve the exchange market object, the unscoped routes serve the default region
         config.router.mount(router -> {
-            router.get("exchange/market", this::handleMarket);
-            router.get("exchange/market.png", this::handleMarketImage);
-            router.get("exchange/market/lastPrice", this::handleMarketLastPrice);
-            router.get("exchange/market/buyOffers", this::handleMarketBuyOffers);
-            router.get("exchange/market/sellOffers", this::handleMarketSellOffers);
+            for (String prefix : new String[] { "exchange/", "exchange/{region}/" }) {
+                router.get(prefix + "market", this::handleMarket);
+                router.get(prefix + "market.png", this::handleMarketImage);
+                router.get(prefix + "market/lastPrice", this::handleMarketLastPrice);
+                router.get(prefix + "market/buyOffers", this::handleMarketBuyOffers);
+                router.get(prefix + "market/sellOffers", this::handleMarketSellOffers);
+                router.get(prefix + "market/changes", this::handleMarketChanges);
+                router.sse(prefix + "market/stream", this::handleMarketStream);
+                router.get(prefix + "history", this::handleHistory);
+                router.get(prefix + "analytics", this::handleAnalytics);
+                router.post(prefix + "alerts", this::handleAlertCreate);
+                router.get(prefix + "alerts/{id}", this::handleAlert);
+                router.delete(prefix + "alerts/{id}", this::handleAlertDelete);
+            }
+            router.get("exchange/regions", this::handleRegions);
+            router.get("exchange/market.proto", this::handleMarketSchema);
         });
     }
 
@@ -49,7 +114,7 @@ public final class ExchangePlugin extends Plugin<Void> {
     @OpenApi(
         path = "/exchange/market",
         methods = HttpMethod.GET,
-        description = "Get the current exchange market object.",
+        description = "Get the current exchange market object. Send 'Accept: application/x-protobuf' to get the binary representation described by /exchange/market.proto. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
         operationId = "exchange_market",
         tags = { "Exchange Market" },
         responses = {
@@ -60,19 +125,47 @@ public final class ExchangePlugin extends Plugin<Void> {
                     @OpenApiContent(
                         from = Market.class,
                         mimeType = "application/json"
+                    ),
+                    @OpenApiContent(
+                        type = "string",
+                        format = "binary",
+                        mimeType = MarketPayloads.PROTOBUF
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "No exchange market has been received yet, retry after the delay given by the Retry-After header.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "The exchange market is not available yet"
                     )
                 }
             )
         }
     )
     private void handleMarket(Context ctx) {
-        ctx.json(exchange.market);
+        final MarketSnapshot snapshot = snapshot(ctx);
+
+        if (snapshot == null) {
+            return;
+        }
+
+        final MarketPayloads payloads = snapshot.getPayloads();
+
+        (acceptsProtobuf(ctx) ? payloads.marketProto : payloads.market).serve(ctx);
     }
 
     @OpenApi(
         path = "/exchange/market.png",
         methods = HttpMethod.GET,
-        description = "Get a PNG image representation (fake screenshot) of the current exchange market object.",
+        description = "Get an image representation (fake screenshot) of the current exchange market object. The format is taken from the 'format' query parameter, or negotiated from the Accept header, defaulting to an indexed PNG. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
         operationId = "exchange_market.png",
         tags = { "Exchange Market" },
         queryParams = {
@@ -80,6 +173,17 @@ public final class ExchangePlugin extends Plugin<Void> {
                 name = "timezone",
                 description = "The timezone used for the image timestamp. See https://docs.oracle.com/javase/8/docs/api/java/time/ZoneId.html for the format.",
                 example = "UTC+2"
+            ),
+            @OpenApiParam(
+                name = "format",
+                description = "The image format, one of 'png' (lossless), 'png8' (indexed colors), 'jpeg' or 'svg'. Takes precedence over the Accept header.",
+                example = "svg"
+            ),
+            @OpenApiParam(
+                name = "width",
+                type = Integer.class,
+                description = "The image width in pixels, one of 320, 640, 960 or 1280 (default). The height keeps the 16:9 ratio.",
+                example = "640"
             )
         },
         responses = {
@@ -89,12 +193,22 @@ public final class ExchangePlugin extends Plugin<Void> {
                 content = {
                     @OpenApiContent(
                         mimeType = "image/png"
+                    ),
+                    @OpenApiContent(
+                        mimeType = "image/jpeg"
+                    ),
+                    @OpenApiContent(
+                        mimeType = "image/svg+xml"
                     )
                 }
             ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
             @OpenApiResponse(
                 status = "400",
-                description = "Invalid timezone query parameter.",
+                description = "Invalid timezone, format or width query parameter.",
                 content = {
                     @OpenApiContent(
                         from = String.class,
@@ -102,34 +216,104 @@ public final class ExchangePlugin extends Plugin<Void> {
                         example = "Invalid 'timezone' format, see https://docs.oracle.com/javase/8/docs/api/java/time/ZoneId.html"
                     )
                 }
+            ),
+            @OpenApiResponse(
+                status = "406",
+                description = "None of the media types of the Accept header can be served.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "Unsupported 'Accept' media types, expected one of image/png, image/jpeg, image/svg+xml"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "No exchange market has been received yet, or the image renderer is overloaded. Retry after the delay given by the Retry-After header.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "The exchange market is not available yet"
+                    )
+                }
             )
         }
     )
     private void handleMarketImage(Context ctx) {
         final String timezone = ctx.queryParam("timezone");
-        ZoneId zone = ZoneId.of("UTC+00");
+        final String formatName = ctx.queryParam("format");
+        final String widthValue = ctx.queryParam("width");
+        ZoneId zone = MarketImageCache.DEFAULT_ZONE;
+        MarketImageFormat format;
+        int width = MarketImageCache.DEFAULT_WIDTH;
 
         if (timezone != null) {
             try {
-                zone = ZoneId.of(timezone);
+                zone = zone(timezone);
             } catch (Exception ignored) {
                 ctx.status(HttpStatus.BAD_REQUEST);
                 ctx.result("Invalid 'timezone' format, see https://docs.oracle.com/javase/8/docs/api/java/time/ZoneId.html");
                 return;
             }
         }
+        if (formatName != null) {
+            format = MarketImageFormat.fromName(formatName);
+            if (format == null) {
+                ctx.status(HttpStatus.BAD_REQUEST);
+                ctx.result("Invalid 'format' value, expected one of png, png8, jpeg, svg");
+                return;
+            }
+        } else {
+            // the representation depends on the Accept header
+            Payload.vary(ctx, Header.ACCEPT);
+            format = MarketImageFormat.negotiate(ctx.header(Header.ACCEPT));
+            if (format == null) {
+                ctx.status(HttpStatus.NOT_ACCEPTABLE);
+                ctx.result("Unsupported 'Accept' media types, expected one of image/png, image/jpeg, image/svg+xml");
+                return;
+            }
+        }
+        if (widthValue != null) {
+            try {
+                width = Integer.parseInt(widthValue);
+            } catch (NumberFormatException ignored) {
+                width = -1;
+            }
+            if (!MarketImageCache.WIDTHS.contains(width)) {
+                ctx.status(HttpStatus.BAD_REQUEST);
+                ctx.result("Invalid 'width' value, expected one of " + MarketImageCache.WIDTHS.stream().map(String::valueOf).collect(Collectors.joining(", ")));
+                return;
+            }
+        }
 
-        final MarketImage image = new MarketImage(exchange.market, zone);
+        final MarketSnapshot snapshot = snapshot(ctx);
 
-        image.draw();
-        ctx.contentType(ContentType.IMAGE_PNG);
-        ctx.result(image.writeToStream());
+        if (snapshot == null) {
+            return;
+        }
+        final CompletableFuture<Payload> image = snapshot.getImages().get(zone, format, width);
+
+        // the image is rendered off the request thread, coalesced with the concurrent requests for it
+        ctx.future(() -> image
+            .thenAccept(payload -> payload.serve(ctx))
+            .exceptionally(e -> {
+                if (!(e.getCause() instanceof RejectedExecutionException)) {
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
+                ctx.header(Header.RETRY_AFTER, Long.toString(RENDER_RETRY_AFTER));
+                ctx.result("The image renderer is overloaded, retry later");
+                return null;
+            })
+        );
     }
 
     @OpenApi(
         path = "exchange/market/lastPrice",
         methods = HttpMethod.GET,
-        description = "Get the last price of the current exchange market object.",
+        description = "Get the last price of the current exchange market object. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
         operationId = "exchange_market_lastPrice",
         tags = { "Exchange Market" },
         responses = {
@@ -143,17 +327,37 @@ public final class ExchangePlugin extends Plugin<Void> {
                         example = "0"
                     )
                 }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "No exchange market has been received yet, retry after the delay given by the Retry-After header.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "The exchange market is not available yet"
+                    )
+                }
             )
         }
     )
     private void handleMarketLastPrice(Context ctx) {
-        ctx.result(Integer.toString(exchange.market.lastPrice));
+        final MarketSnapshot snapshot = snapshot(ctx);
+
+        if (snapshot == null) {
+            return;
+        }
+        snapshot.getPayloads().lastPrice.serve(ctx);
     }
 
     @OpenApi(
         path = "exchange/market/buyOffers",
         methods = HttpMethod.GET,
-        description = "Get the 5 best buy offers of the current exchange market object.",
+        description = "Get the 5 best buy offers of the current exchange market object. Send 'Accept: application/x-protobuf' to get the binary representation described by /exchange/market.proto. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
         operationId = "exchange_market_buyOffers",
         tags = { "Exchange Market" },
         responses = {
@@ -164,19 +368,47 @@ public final class ExchangePlugin extends Plugin<Void> {
                     @OpenApiContent(
                         from = Offer[].class,
                         mimeType = "application/json"
+                    ),
+                    @OpenApiContent(
+                        type = "string",
+                        format = "binary",
+                        mimeType = MarketPayloads.PROTOBUF
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "No exchange market has been received yet, retry after the delay given by the Retry-After header.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "The exchange market is not available yet"
                     )
                 }
             )
         }
     )
     private void handleMarketBuyOffers(Context ctx) {
-        ctx.json(exchange.market.buyOffers);
+        final MarketSnapshot snapshot = snapshot(ctx);
+
+        if (snapshot == null) {
+            return;
+        }
+
+        final MarketPayloads payloads = snapshot.getPayloads();
+
+        (acceptsProtobuf(ctx) ? payloads.buyOffersProto : payloads.buyOffers).serve(ctx);
     }
 
     @OpenApi(
         path = "exchange/market/sellOffers",
         methods = HttpMethod.GET,
-        description = "Get the 5 best sell offers of the current exchange market object.",
+        description = "Get the 5 best sell offers of the current exchange market object. Send 'Accept: application/x-protobuf' to get the binary representation described by /exchange/market.proto. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
         operationId = "exchange_market_sellOffers",
         tags = { "Exchange Market" },
         responses = {
@@ -187,12 +419,605 @@ public final class ExchangePlugin extends Plugin<Void> {
                     @OpenApiContent(
                         from = Offer[].class,
                         mimeType = "application/json"
+                    ),
+                    @OpenApiContent(
+                        type = "string",
+                        format = "binary",
+                        mimeType = MarketPayloads.PROTOBUF
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "No exchange market has been received yet, retry after the delay given by the Retry-After header.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "The exchange market is not available yet"
                     )
                 }
             )
         }
     )
     private void handleMarketSellOffers(Context ctx) {
-        ctx.json(exchange.market.sellOffers);
+        final MarketSnapshot snapshot = snapshot(ctx);
+
+        if (snapshot == null) {
+            return;
+        }
+
+        final MarketPayloads payloads = snapshot.getPayloads();
+
+        (acceptsProtobuf(ctx) ? payloads.sellOffersProto : payloads.sellOffers).serve(ctx);
+    }
+
+    @OpenApi(
+        path = "exchange/market/changes",
+        methods = HttpMethod.GET,
+        description = "Get the changes of the exchange market object since a given version. Only the changed fields are listed, offers being identified by their index. When the version is unknown or too old, every field is listed and 'full' is set. When it is ahead of the computed changes, nothing is listed. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
+        operationId = "exchange_market_changes",
+        tags = { "Exchange Market" },
+        queryParams = {
+            @OpenApiParam(
+                name = "since",
+                type = Long.class,
+                description = "The market version the client currently holds, as returned in the 'to' field of a previous response.",
+                example = "42"
+            )
+        },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "The changes between the given version and the current one.",
+                content = {
+                    @OpenApiContent(
+                        mimeType = "application/json",
+                        example = "{\"from\":42,\"to\":43,\"full\":false,\"lastPrice\":5123,\"buyOffers\":[{\"index\":0,\"price\":5000,\"volume\":12}],\"sellOffers\":[]}"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
+            @OpenApiResponse(
+                status = "400",
+                description = "Invalid since query parameter.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "Invalid 'since' format, expected a positive market version"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "No exchange market has been received yet, retry after the delay given by the Retry-After header.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "The exchange market is not available yet"
+                    )
+                }
+            )
+        }
+    )
+    private void handleMarketChanges(Context ctx) {
+        final String since = ctx.queryParam("since");
+        long version = 0;
+
+        if (since != null) {
+            try {
+                version = Long.parseLong(since);
+            } catch (NumberFormatException ignored) {
+                version = -1;
+            }
+            if (version < 0) {
+                ctx.status(HttpStatus.BAD_REQUEST);
+                ctx.result("Invalid 'since' format, expected a positive market version");
+                return;
+            }
+        }
+
+        final ExchangeListener exchange = exchange(ctx);
+
+        if (exchange == null || snapshot(ctx, exchange) == null) {
+            return;
+        }
+
+        final Payload changes = exchange.changes.get(version);
+
+        // the snapshot is published before the changes catch up with it
+        if (changes == null) {
+            ctx.header(Header.RETRY_AFTER, Long.toString(RETRY_AFTER));
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
+            ctx.result("The exchange market is not available yet");
+            return;
+        }
+        changes.serve(ctx);
+    }
+
+    @OpenApi(
+        path = "exchange/market/stream",
+        methods = HttpMethod.GET,
+        description = "Subscribe to the exchange market updates as Server-Sent Events. Each 'market' event carries the new exchange market object, with the market version as event id. Each region accepts up to 256 subscribers, the extra ones and the subscribers not reading their events are disconnected. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
+        operationId = "exchange_market_stream",
+        tags = { "Exchange Market" },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "A stream of exchange market objects.",
+                content = {
+                    @OpenApiContent(
+                        from = Market.class,
+                        mimeType = "text/event-stream"
+                    )
+                }
+            )
+        }
+    )
+    private void handleMarketStream(SseClient client) {
+        final ExchangeListener exchange = exchange(client.ctx());
+
+        if (exchange == null) {
+            client.close();
+            return;
+        }
+        if (!streams.get(region(client.ctx())).subscribe(client)) {
+            // the stream is full, the client reconnects later
+            client.close();
+        }
+    }
+
+    @OpenApi(
+        path = "exchange/history",
+        methods = HttpMethod.GET,
+        description = "Get the exchange market history as candles. Each candle summarizes the last price (open, high, low, close), the best offers and the offers depth (total volume of the 5 best offers) of the updates received during its period. Periods without updates are omitted, and the last price fields are left out when none of the updates had a last price. Only about the last 30 days of updates are retained. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
+        operationId = "exchange_history",
+        tags = { "Exchange History" },
+        queryParams = {
+            @OpenApiParam(
+                name = "from",
+                description = "The start of the range (inclusive), as epoch milliseconds or an ISO-8601 instant. Defaults to one day before 'to'.",
+                example = "2025-01-01T00:00:00Z"
+            ),
+            @OpenApiParam(
+                name = "to",
+                description = "The end of the range (exclusive), as epoch milliseconds or an ISO-8601 instant. Defaults to now.",
+                example = "2025-01-02T00:00:00Z"
+            ),
+            @OpenApiParam(
+                name = "step",
+                type = Long.class,
+                description = "The duration of each candle, in seconds. Defaults to 300.",
+                example = "3600"
+            )
+        },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "The candles of the requested range.",
+                content = {
+                    @OpenApiContent(
+                        mimeType = "application/json",
+                        example = "{\"from\":1735689600000,\"to\":1735693200000,\"step\":3600000,\"candles\":[{\"time\":1735689600000,\"count\":12,\"open\":5100,\"high\":5150,\"low\":5080,\"close\":5123,\"bestBuyPrice\":5000,\"bestSellPrice\":5200,\"buyDepth\":{\"avg\":4200,\"min\":3900,\"max\":4600},\"sellDepth\":{\"avg\":1800,\"min\":1500,\"max\":2100}}]}"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
+            @OpenApiResponse(
+                status = "400",
+                description = "Invalid from, to or step query parameter.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "Invalid range, at most 10000 candles can be requested at once"
+                    )
+                }
+            )
+        }
+    )
+    private void handleHistory(Context ctx) {
+        final String fromParam = ctx.queryParam("from");
+        final String toParam = ctx.queryParam("to");
+        final String stepParam = ctx.queryParam("step");
+        final long to;
+        final long from;
+        final long step;
+
+        try {
+            to = toParam == null ? System.currentTimeMillis() : parseInstant(toParam);
+            from = fromParam == null ? to - DEFAULT_HISTORY_RANGE : parseInstant(fromParam);
+            step = stepParam == null ? DEFAULT_HISTORY_STEP : Duration.ofSeconds(Long.parseLong(stepParam)).toMillis();
+        } catch (DateTimeParseException | ArithmeticException | NumberFormatException ignored) {
+            ctx.status(HttpStatus.BAD_REQUEST);
+            ctx.result("Invalid 'from', 'to' or 'step' format, expected epoch milliseconds or ISO-8601 instants and a step in seconds");
+            return;
+        }
+        if (step <= 0 || from >= to || (to - from) / step >= MAX_HISTORY_CANDLES) {
+            ctx.status(HttpStatus.BAD_REQUEST);
+            ctx.result("Invalid range, at most " + MAX_HISTORY_CANDLES + " candles can be requested at once");
+            return;
+        }
+
+        final ExchangeListener exchange = exchange(ctx);
+
+        if (exchange == null) {
+            return;
+        }
+        exchange.history.query(from, to, step).toPayload().serve(ctx);
+    }
+
+    @OpenApi(
+        path = "exchange/regions",
+        methods = HttpMethod.GET,
+        description = "Get a cross-region summary of the exchange markets: the last price, best offers and spread of each region, along with the best buy and sell prices across all of them. The regions with an empty side of the book are left out of the best prices and spreads.",
+        operationId = "exchange_regions",
+        tags = { "Exchange Market" },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "The cross-region summary. Regions without any market only list their name.",
+                content = {
+                    @OpenApiContent(
+                        mimeType = "application/json",
+                        example = "{\"regions\":[{\"region\":\"eu_west\",\"version\":42,\"receivedAt\":1735689600000,\"lastPrice\":5123,\"bestBuyPrice\":5000,\"bestSellPrice\":5200,\"spread\":200}],\"bestBuy\":{\"region\":\"eu_west\",\"price\":5000},\"bestSell\":{\"region\":\"eu_west\",\"price\":5200},\"spread\":200}"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            )
+        }
+    )
+    private void handleRegions(Context ctx) {
+        regions.get().serve(ctx);
+    }
+
+    @OpenApi(
+        path = "/exchange/analytics",
+        methods = HttpMethod.GET,
+        description = "Get indicators computed from the exchange market updates: top of the book, depth of the 5 levels and their imbalance, moving averages, EWMAs and realized volatility of the last price. Computed once per market update. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
+        operationId = "exchange_analytics",
+        tags = { "Exchange Market" },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "The market indicators. The undefined ones, such as the spread of a one-sided book, are null or left out.",
+                content = {
+                    @OpenApiContent(
+                        mimeType = "application/json",
+                        example = "{\"version\":42,\"receivedAt\":1700000000000,\"samples\":42,\"lastPrice\":5123,\"bestBuyPrice\":5000,\"bestSellPrice\":5200,\"spread\":200,\"relativeSpread\":0.0392,\"midPrice\":5100.0,\"microPrice\":5186.7,\"buyDepth\":{\"volume\":43215,\"weightedPrice\":4971.4},\"sellDepth\":{\"volume\":15,\"weightedPrice\":5226.7},\"imbalance\":0.9993,\"movingAverages\":[{\"window\":10,\"samples\":10,\"value\":5110.2}],\"ewma\":[{\"halfLife\":300,\"value\":5108.9}],\"volatility\":{\"window\":100,\"samples\":41,\"value\":0.0042}}"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "No exchange market has been received yet, retry after the delay given by the Retry-After header.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "The exchange market is not available yet"
+                    )
+                }
+            )
+        }
+    )
+    private void handleAnalytics(Context ctx) {
+        final ExchangeListener exchange = exchange(ctx);
+
+        if (exchange == null || snapshot(ctx, exchange) == null) {
+            return;
+        }
+
+        final Payload analytics = exchange.analytics.get();
+
+        // the snapshot is published before the analytics catch up with it
+        if (analytics == null) {
+            ctx.header(Header.RETRY_AFTER, Long.toString(RETRY_AFTER));
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
+            ctx.result("The exchange market is not available yet");
+            return;
+        }
+        analytics.serve(ctx);
+    }
+
+    @OpenApi(
+        path = "/exchange/alerts",
+        methods = HttpMethod.POST,
+        description = "Register an alert, notified once through a webhook when a price of the market crosses a threshold. An 'above' alert triggers on the first update where the price is greater than or equal to the threshold, a 'below' alert when it is less than or equal to it. The webhook receives a POST with a json array of the triggered notifications, retried with a backoff on failure. Alerts are discarded once triggered. Registered for the default region, use the /exchange/{region}/ prefix to target a specific one.",
+        operationId = "exchange_alerts_create",
+        tags = { "Exchange Alerts" },
+        requestBody = @OpenApiRequestBody(
+            required = true,
+            content = {
+                @OpenApiContent(
+                    mimeType = "application/json",
+                    example = "{\"field\":\"lastPrice\",\"direction\":\"above\",\"threshold\":5500,\"webhook\":\"https://example.com/hooks/ska\"}"
+                )
+            }
+        ),
+        responses = {
+            @OpenApiResponse(
+                status = "201",
+                description = "The registered alert. The notifications repeat its fields along with the triggering value and market version.",
+                content = {
+                    @OpenApiContent(
+                        mimeType = "application/json",
+                        example = "{\"id\":\"0b7f4c1e-2a5d-4e8b-9c3f-6d1a2b3c4d5e\",\"field\":\"lastPrice\",\"direction\":\"above\",\"threshold\":5500,\"webhook\":\"https://example.com/hooks/ska\",\"createdAt\":1735689600000}"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "400",
+                description = "Invalid alert.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "Invalid 'field', expected one of lastPrice, bestBuyPrice, bestSellPrice"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "503",
+                description = "Too many alerts are pending on the market.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain",
+                        example = "Too many alerts registered"
+                    )
+                }
+            )
+        }
+    )
+    private void handleAlertCreate(Context ctx) {
+        final ExchangeListener exchange = exchange(ctx);
+
+        if (exchange == null) {
+            return;
+        }
+
+        final Alert alert;
+
+        try {
+            alert = Alert.parse(ctx.bodyAsBytes());
+        } catch (IllegalArgumentException e) {
+            ctx.status(HttpStatus.BAD_REQUEST);
+            ctx.result(e.getMessage());
+            return;
+        }
+        try {
+            exchange.alerts.register(alert);
+        } catch (IllegalStateException e) {
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
+            ctx.result(e.getMessage());
+            return;
+        }
+        ctx.header(Header.LOCATION, ctx.path() + "/" + alert.getId());
+        ctx.status(HttpStatus.CREATED);
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.result(alert.toJson());
+    }
+
+    @OpenApi(
+        path = "/exchange/alerts/{id}",
+        methods = HttpMethod.GET,
+        description = "Get a pending alert. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
+        operationId = "exchange_alerts_get",
+        tags = { "Exchange Alerts" },
+        pathParams = {
+            @OpenApiParam(
+                name = "id",
+                description = "The alert id.",
+                required = true
+            )
+        },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "The pending alert.",
+                content = {
+                    @OpenApiContent(
+                        mimeType = "application/json",
+                        example = "{\"id\":\"0b7f4c1e-2a5d-4e8b-9c3f-6d1a2b3c4d5e\",\"field\":\"lastPrice\",\"direction\":\"above\",\"threshold\":5500,\"webhook\":\"https://example.com/hooks/ska\",\"createdAt\":1735689600000}"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "404",
+                description = "The alert doesn't exist, was deleted or has already triggered."
+            )
+        }
+    )
+    private void handleAlert(Context ctx) {
+        final ExchangeListener exchange = exchange(ctx);
+
+        if (exchange == null) {
+            return;
+        }
+
+        final Alert alert = exchange.alerts.get(ctx.pathParam("id"));
+
+        if (alert == null) {
+            ctx.status(HttpStatus.NOT_FOUND);
+            ctx.result("Unknown alert, it may have already triggered");
+            return;
+        }
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.result(alert.toJson());
+    }
+
+    @OpenApi(
+        path = "/exchange/alerts/{id}",
+        methods = HttpMethod.DELETE,
+        description = "Delete a pending alert. Served for the default region, use the /exchange/{region}/ prefix to target a specific one.",
+        operationId = "exchange_alerts_delete",
+        tags = { "Exchange Alerts" },
+        pathParams = {
+            @OpenApiParam(
+                name = "id",
+                description = "The alert id.",
+                required = true
+            )
+        },
+        responses = {
+            @OpenApiResponse(
+                status = "204",
+                description = "The alert was deleted."
+            ),
+            @OpenApiResponse(
+                status = "404",
+                description = "The alert doesn't exist, was already deleted or has already triggered."
+            )
+        }
+    )
+    private void handleAlertDelete(Context ctx) {
+        final ExchangeListener exchange = exchange(ctx);
+
+        if (exchange == null) {
+            return;
+        }
+        if (!exchange.alerts.remove(ctx.pathParam("id"))) {
+            ctx.status(HttpStatus.NOT_FOUND);
+            ctx.result("Unknown alert, it may have already triggered");
+            return;
+        }
+        ctx.status(HttpStatus.NO_CONTENT);
+    }
+
+    @OpenApi(
+        path = "/exchange/market.proto",
+        methods = HttpMethod.GET,
+        description = "Get the protocol buffers schema of the binary market representations.",
+        operationId = "exchange_market.proto",
+        tags = { "Exchange Market" },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "The market.proto schema.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain"
+                    )
+                }
+            ),
+            @OpenApiResponse(
+                status = "304",
+                description = "The representation matching the If-None-Match header is unchanged."
+            )
+        }
+    )
+    private void handleMarketSchema(Context ctx) {
+        schema.serve(ctx);
+    }
+
+    // util
+
+    private static boolean acceptsProtobuf(Context ctx) {
+        final String accept = ctx.header(Header.ACCEPT);
+        final double protobuf = AcceptHeader.quality(accept, MarketPayloads.PROTOBUF, "application/protobuf");
+        final double json = AcceptHeader.quality(accept, "application/json");
+        final double wildcard = AcceptHeader.quality(accept, "application/*", "*/*");
+
+        // the representation depends on the Accept header, an explicit json entry winning ties
+        Payload.vary(ctx, Header.ACCEPT);
+        return protobuf > 0 && protobuf > json && protobuf >= wildcard;
+    }
+
+    private static Payload schema() {
+        try (InputStream in = ExchangePlugin.class.getClassLoader().getResourceAsStream("market.proto")) {
+            return Payload.of(Objects.requireNonNull(in).readAllBytes(), ContentType.TEXT_PLAIN.getMimeType());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the market schema", e);
+        }
+    }
+
+    private ZoneId zone(String timezone) {
+        ZoneId zone = zones.get(timezone);
+
+        // parsing the region based timezones is costly, the clients keep sending the same few
+        if (zone == null) {
+            zone = ZoneId.of(timezone);
+            if (zones.size() < MAX_ZONES) {
+                zones.put(timezone, zone);
+            }
+        }
+        return zone;
+    }
+
+    private Region region(Context ctx) {
+        final String region = ctx.pathParamMap().get("region");
+
+        if (region == null) {
+            return defaultRegion;
+        }
+        try {
+            return Region.valueOf(region.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    private ExchangeListener exchange(Context ctx) {
+        final Region region = region(ctx);
+        final ExchangeListener exchange = region == null ? null : exchanges.get(region);
+
+        if (exchange == null) {
+            ctx.status(HttpStatus.NOT_FOUND);
+            ctx.result("Unknown region '" + ctx.pathParamMap().get("region") + "', expected one of " + exchanges.keySet().stream()
+                .map(ExchangeRegions::name)
+                .collect(Collectors.joining(", ")));
+        }
+        return exchange;
+    }
+
+    private MarketSnapshot snapshot(Context ctx) {
+        final ExchangeListener exchange = exchange(ctx);
+
+        return exchange == null ? null : snapshot(ctx, exchange);
+    }
+
+    private static MarketSnapshot snapshot(Context ctx, ExchangeListener exchange) {
+        final MarketSnapshot snapshot = exchange.getSnapshot();
+
+        // nothing has been received nor restored yet
+        if (snapshot == null) {
+            ctx.header(Header.RETRY_AFTER, Long.toString(RETRY_AFTER));
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
+            ctx.result("The exchange market is not available yet");
+            return null;
+        }
+
+        // tell how old the market is, it may come from before a restart
+        ctx.header(Header.AGE, Long.toString(Math.max(0, (System.currentTimeMillis() - snapshot.getReceivedAt()) / 1_000)));
+        return snapshot;
+    }
+
+    private static long parseInstant(String value) {
+        // accept both epoch milliseconds and ISO-8601 instants
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.javalin.http.ContentType;
+import net.azzerial.skhc.enums.Region;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+public final class ExchangeRegions {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Region[] regions;
+    private final ExchangeListener[] exchanges;
+    private volatile Summary summary;
+
+    /* Constructors */
+
+    public ExchangeRegions(Map<Region, ExchangeListener> exchanges) {
+        this.regions = exchanges.keySet().toArray(new Region[0]);
+        this.exchanges = exchanges.values().toArray(new ExchangeListener[0]);
+    }
+
+    /* Methods */
+
+    public Payload get() {
+        final MarketSnapshot[] snapshots = new MarketSnapshot[exchanges.length];
+
+        for (int i = 0; i != exchanges.length; i++) {
+            snapshots[i] = exchanges[i].getSnapshot();
+        }
+
+        // reuse the summary as long as no region received an update
+        final Summary summary = this.summary;
+
+        if (summary != null && Arrays.equals(summary.snapshots, snapshots)) {
+            return summary.payload;
+        }
+
+        final Summary updated = new Summary(snapshots, json(snapshots));
+
+        this.summary = updated;
+        return updated.payload;
+    }
+
+    /* Internal */
+
+    private Payload json(MarketSnapshot[] snapshots) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256 + (regions.length * 192));
+        int bestBuy = -1;
+        int bestSell = -1;
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("regions");
+            for (int i = 0; i != regions.length; i++) {
+                final MarketSnapshot snapshot = snapshots[i];
+
+                generator.writeStartObject();
+                generator.writeStringField("region", name(regions[i]));
+                if (snapshot != null) {
+                    final int buyPrice = snapshot.getBestBuyPrice();
+                    final int sellPrice = snapshot.getBestSellPrice();
+
+                    generator.writeNumberField("version", snapshot.getVersion());
+                    generator.writeNumberField("receivedAt", snapshot.getReceivedAt());
+                    generator.writeNumberField("lastPrice", snapshot.getLastPrice());
+                    generator.writeNumberField("bestBuyPrice", buyPrice);
+                    generator.writeNumberField("bestSellPrice", sellPrice);
+                    if (buyPrice > 0 && sellPrice > 0) {
+                        generator.writeNumberField("spread", sellPrice - buyPrice);
+                    }
+
+                    // an empty side of the book has no best price
+                    if (buyPrice > 0 && (bestBuy == -1 || buyPrice > snapshots[bestBuy].getBestBuyPrice())) {
+                        bestBuy = i;
+                    }
+                    if (sellPrice > 0 && (bestSell == -1 || sellPrice < snapshots[bestSell].getBestSellPrice())) {
+                        bestSell = i;
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            if (bestBuy != -1) {
+                writeBest(generator, "bestBuy", regions[bestBuy], snapshots[bestBuy].getBestBuyPrice());
+            }
+            if (bestSell != -1) {
+                writeBest(generator, "bestSell", regions[bestSell], snapshots[bestSell].getBestSellPrice());
+            }
+            if (bestBuy != -1 && bestSell != -1) {
+                generator.writeNumberField("spread", snapshots[bestSell].getBestSellPrice() - snapshots[bestBuy].getBestBuyPrice());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize the regions summary", e);
+        }
+        return Payload.of(out.toByteArray(), ContentType.APPLICATION_JSON.getMimeType());
+    }
+
+    private static void writeBest(JsonGenerator generator, String name, Region region, int price) throws IOException {
+        generator.writeObjectFieldStart(name);
+        generator.writeStringField("region", name(region));
+        generator.writeNumberField("price", price);
+        generator.writeEndObject();
+    }
+
+    // util
+
+    public static String name(Region region) {
+        return region.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Summary {
+
+        private final MarketSnapshot[] snapshots;
+        private final Payload payload;
+
+        /* Constructors */
+
+        private Summary(MarketSnapshot[] snapshots, Payload payload) {
+            this.snapshots = snapshots;
+            this.payload = payload;
+        }
+    }
+}
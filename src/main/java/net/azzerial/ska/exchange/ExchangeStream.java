@@ -0,0 +1,224 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import io.javalin.http.sse.SseClient;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ExchangeStream implements MarketConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(ExchangeStream.class);
+
+    // the amount of threads kept writing events to the subscribers, a blocked write takes an extra one
+    private static final int SENDER_THREADS = 4;
+    // the maximum amount of subscribers per stream
+    private static final int MAX_SUBSCRIBERS = 256;
+    // the maximum amount of events queued per subscriber
+    private static final int QUEUE_CAPACITY = 4;
+    // the time after which a subscriber stuck on a write is evicted
+    private static final long SEND_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    // evicts the stuck subscribers of every stream
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new SenderThreadFactory("exchange-stream-watchdog"));
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor senders = new ThreadPoolExecutor(
+        SENDER_THREADS,
+        MAX_SUBSCRIBERS,
+        60,
+        TimeUnit.SECONDS,
+        new SynchronousQueue<>(),
+        new SenderThreadFactory("exchange-stream")
+    );
+    private volatile Event latest;
+
+    /* Constructors */
+
+    public ExchangeStream() {
+        WATCHDOG.scheduleWithFixedDelay(this::evictStuck, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /* Methods */
+
+    @Override
+    public void onMarketSnapshot(@NotNull MarketSnapshot snapshot) {
+        // serialize the event once, every subscriber shares it
+        final Event event = new Event(snapshot);
+
+        this.latest = event;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    // false when the stream is full, the client is left untouched
+    public boolean subscribe(SseClient client) {
+        final Subscriber subscriber = new Subscriber(client);
+
+        synchronized (subscribers) {
+            if (subscribers.size() >= MAX_SUBSCRIBERS) {
+                return false;
+            }
+            subscribers.add(subscriber);
+        }
+        client.keepAlive();
+        client.onClose(() -> subscribers.remove(subscriber));
+
+        // bring the new subscriber up to date
+        final Event latest = this.latest;
+
+        if (latest != null) {
+            subscriber.offer(latest);
+        }
+        return true;
+    }
+
+    /* Internal */
+
+    private void evictStuck() {
+        final long now = System.nanoTime();
+
+        for (Subscriber subscriber : subscribers) {
+            final long sendingSince = subscriber.sendingSince;
+
+            if (sendingSince != 0 && now - sendingSince > SEND_TIMEOUT) {
+                log.debug("Evicting a subscriber stuck on a write for over {} seconds", TimeUnit.NANOSECONDS.toSeconds(SEND_TIMEOUT));
+                subscriber.evict();
+            }
+        }
+    }
+
+    private static final class Event {
+
+        private final String id;
+        private final String data;
+
+        /* Constructors */
+
+        private Event(MarketSnapshot snapshot) {
+            this.id = Long.toString(snapshot.getVersion());
+            this.data = new String(snapshot.getPayloads().market.getBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseClient client;
+        private final ArrayDeque<Event> queue = new ArrayDeque<>(QUEUE_CAPACITY);
+        private boolean scheduled;
+        // the start of the pending write, 0 when idle
+        private volatile long sendingSince;
+
+        /* Constructors */
+
+        private Subscriber(SseClient client) {
+            this.client = client;
+        }
+
+        /* Methods */
+
+        private void offer(Event event) {
+            synchronized (this) {
+                // drop the oldest event, the newest one supersedes it anyway
+                if (queue.size() == QUEUE_CAPACITY) {
+                    queue.pollFirst();
+                }
+                queue.addLast(event);
+
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // every sender is stuck on a write
+                evict();
+            }
+        }
+
+        private void evict() {
+            subscribers.remove(this);
+            client.close();
+        }
+
+        private void drain() {
+            while (true) {
+                final Event event;
+
+                synchronized (this) {
+                    event = queue.pollFirst();
+
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                if (client.terminated()) {
+                    subscribers.remove(this);
+                    continue;
+                }
+                sendingSince = System.nanoTime();
+                try {
+                    client.sendEvent("market", event.data, event.id);
+                } catch (RuntimeException e) {
+                    log.debug("Failed to send a market event: {}", e.getMessage());
+                    evict();
+                } finally {
+                    sendingSince = 0;
+                }
+            }
+        }
+    }
+
+    private static final class SenderThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        /* Constructors */
+
+        private SenderThreadFactory(String name) {
+            this.name = name;
+        }
+
+        /* Methods */
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+final class GlyphAtlas {
+
+    // the printable ascii range, the only characters drawn onto the market images
+    private static final char FIRST_CHAR = ' ';
+    private static final char LAST_CHAR = '~';
+    // the alpha multiplication table used by java2d to blend antialiased glyphs
+    private static final byte[] MUL8 = new byte[256 * 256];
+
+    static {
+        for (int a = 1; a != 256; a++) {
+            final int increment = a * 0x010101;
+            int value = increment + (1 << 23);
+
+            for (int b = 1; b != 256; b++) {
+                MUL8[(a << 8) | b] = (byte) (value >>> 24);
+                value += increment;
+            }
+        }
+    }
+
+    private final Font font;
+    private final Glyph[] glyphs = new Glyph[LAST_CHAR - FIRST_CHAR + 1];
+
+    /* Constructors */
+
+    GlyphAtlas(Font font) {
+        final FontRenderContext frc = new FontRenderContext(null, RenderingHints.VALUE_TEXT_ANTIALIAS_ON, RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT);
+        final int size = font.getSize() * 3;
+        final BufferedImage canvas = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+        final byte[] coverage = ((DataBufferByte) canvas.getRaster().getDataBuffer()).getData();
+
+        this.font = font;
+        for (char c = FIRST_CHAR; c <= LAST_CHAR; c++) {
+            glyphs[c - FIRST_CHAR] = rasterize(font, frc, canvas, coverage, c);
+        }
+    }
+
+    /* Methods */
+
+    boolean canDraw(String text) {
+        for (int i = 0; i != text.length(); i++) {
+            final char c = text.charAt(i);
+
+            if (c < FIRST_CHAR || c > LAST_CHAR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int width(String text) {
+        int width = 0;
+
+        for (int i = 0; i != text.length(); i++) {
+            width += glyphs[text.charAt(i) - FIRST_CHAR].advance;
+        }
+        return width;
+    }
+
+    void draw(Graphics2D g, BufferedImage image, String text, int x, int y, Color color) {
+        // the atlas only holds ascii glyphs, and blends into int rgb images
+        if (!canDraw(text) || image.getType() != BufferedImage.TYPE_INT_RGB) {
+            g.setColor(color);
+            g.setFont(font);
+            g.drawString(text, x, y);
+            return;
+        }
+
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final int scanline = ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+        final int rgb = color.getRGB();
+        int penX = x;
+
+        // blend the glyphs one after the other, the same way drawString does
+        for (int i = 0; i != text.length(); i++) {
+            final Glyph glyph = glyphs[text.charAt(i) - FIRST_CHAR];
+
+            blend(pixels, scanline, image.getWidth(), image.getHeight(), glyph, penX + glyph.left, y + glyph.top, rgb);
+            penX += glyph.advance;
+        }
+    }
+
+    /* Internal */
+
+    private static Glyph rasterize(Font font, FontRenderContext frc, BufferedImage canvas, byte[] coverage, char c) {
+        final int size = canvas.getWidth();
+        final int originX = size / 3;
+        final int originY = (size * 2) / 3;
+        final Graphics2D g = canvas.createGraphics();
+
+        // draw the glyph white on black, leaving its coverage in the canvas
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, size, size);
+        g.setColor(Color.WHITE);
+        g.setFont(font);
+        g.drawString(String.valueOf(c), originX, originY);
+        g.dispose();
+
+        final GlyphVector vector = font.createGlyphVector(frc, new char[] {c});
+        final int advance = (int) Math.round(vector.getGlyphPosition(1).getX());
+        int minX = size;
+        int minY = size;
+        int maxX = -1;
+        int maxY = -1;
+
+        // crop the glyph to its coverage bounds
+        for (int py = 0; py != size; py++) {
+            for (int px = 0; px != size; px++) {
+                if (coverage[py * size + px] != 0) {
+                    minX = Math.min(minX, px);
+                    minY = Math.min(minY, py);
+                    maxX = Math.max(maxX, px);
+                    maxY = Math.max(maxY, py);
+                }
+            }
+        }
+        if (maxX == -1) {
+            return new Glyph(advance, 0, 0, 0, 0, new byte[0]);
+        }
+
+        final int width = maxX - minX + 1;
+        final int height = maxY - minY + 1;
+        final byte[] mask = new byte[width * height];
+
+        for (int py = 0; py != height; py++) {
+            System.arraycopy(coverage, (minY + py) * size + minX, mask, py * width, width);
+        }
+        return new Glyph(advance, minX - originX, minY - originY, width, height, mask);
+    }
+
+    private static void blend(int[] pixels, int scanline, int imageWidth, int imageHeight, Glyph glyph, int left, int top, int rgb) {
+        final int srcR = (rgb >> 16) & 0xFF;
+        final int srcG = (rgb >> 8) & 0xFF;
+        final int srcB = rgb & 0xFF;
+        final int fromX = Math.max(0, -left);
+        final int fromY = Math.max(0, -top);
+        final int toX = Math.min(glyph.width, imageWidth - left);
+        final int toY = Math.min(glyph.height, imageHeight - top);
+
+        for (int gy = fromY; gy < toY; gy++) {
+            final int row = (top + gy) * scanline + left;
+
+            for (int gx = fromX; gx < toX; gx++) {
+                final int srcA = glyph.mask[gy * glyph.width + gx] & 0xFF;
+
+                if (srcA == 0) {
+                    continue;
+                }
+                if (srcA == 0xFF) {
+                    pixels[row + gx] = rgb & 0xFFFFFF;
+                    continue;
+                }
+
+                final int dst = pixels[row + gx];
+                final int dstA = 0xFF - srcA;
+                final int r = mul8(srcA, srcR) + mul8(dstA, (dst >> 16) & 0xFF);
+                final int g = mul8(srcA, srcG) + mul8(dstA, (dst >> 8) & 0xFF);
+                final int b = mul8(srcA, srcB) + mul8(dstA, dst & 0xFF);
+
+                pixels[row + gx] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    // util
+
+    private static int mul8(int a, int b) {
+        return MUL8[(a << 8) | b] & 0xFF;
+    }
+
+    private static final class Glyph {
+
+        private final int advance;
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int height;
+        private final byte[] mask;
+
+        /* Constructors */
+
+        private Glyph(int advance, int left, int top, int width, int height, byte[] mask) {
+            this.advance = advance;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.mask = mask;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.javalin.http.ContentType;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+public final class MarketAnalytics implements MarketConsumer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // the moving average windows, in market updates
+    private static final int[] AVERAGE_WINDOWS = { 10, 100 };
+    // the exponentially weighted moving average half-lives
+    private static final Duration[] EWMA_HALF_LIVES = { Duration.ofMinutes(5), Duration.ofHours(1) };
+    // the realized volatility window, in market updates
+    private static final int VOLATILITY_WINDOW = 100;
+
+    private final Window[] averages = new Window[AVERAGE_WINDOWS.length];
+    private final double[] ewmas = new double[EWMA_HALF_LIVES.length];
+    private final Window returns = new Window(VOLATILITY_WINDOW);
+    private long samples;
+    private long lastSampleAt;
+    private int lastSamplePrice;
+    private volatile Payload payload;
+
+    /* Constructors */
+
+    public MarketAnalytics() {
+        for (int i = 0; i != AVERAGE_WINDOWS.length; i++) {
+            averages[i] = new Window(AVERAGE_WINDOWS[i]);
+        }
+    }
+
+    /* Getters */
+
+    public Payload get() {
+        return payload;
+    }
+
+    /* Methods */
+
+    @Override
+    public synchronized void onMarketSnapshot(@NotNull MarketSnapshot snapshot) {
+        final int lastPrice = snapshot.getLastPrice();
+
+        // the price indicators only track actual trades
+        if (lastPrice > 0) {
+            for (Window average : averages) {
+                average.add(lastPrice);
+            }
+            for (int i = 0; i != EWMA_HALF_LIVES.length; i++) {
+                ewmas[i] = samples == 0 ? lastPrice : ewma(ewmas[i], lastPrice, snapshot.getReceivedAt() - lastSampleAt, EWMA_HALF_LIVES[i]);
+            }
+            if (samples != 0) {
+                returns.add(Math.log((double) lastPrice / lastSamplePrice));
+            }
+            samples++;
+            lastSampleAt = snapshot.getReceivedAt();
+            lastSamplePrice = lastPrice;
+        }
+
+        // serialize once, every client shares the payload until the next update
+        this.payload = serialize(snapshot);
+    }
+
+    /* Internal */
+
+    private Payload serialize(MarketSnapshot snapshot) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            write(generator, snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize the market analytics", e);
+        }
+        return Payload.of(out.toByteArray(), ContentType.APPLICATION_JSON.getMimeType());
+    }
+
+    private void write(JsonGenerator generator, MarketSnapshot snapshot) throws IOException {
+        final int bestBuyPrice = snapshot.getBestBuyPrice();
+        final int bestSellPrice = snapshot.getBestSellPrice();
+        final long buyVolume = buyVolume(snapshot);
+        final long sellVolume = sellVolume(snapshot);
+        final boolean quoted = bestBuyPrice > 0 && bestSellPrice > 0;
+
+        generator.writeStartObject();
+        generator.writeNumberField("version", snapshot.getVersion());
+        generator.writeNumberField("receivedAt", snapshot.getReceivedAt());
+        generator.writeNumberField("samples", samples);
+        generator.writeNumberField("lastPrice", snapshot.getLastPrice());
+
+        // top of the book
+        generator.writeNumberField("bestBuyPrice", bestBuyPrice);
+        generator.writeNumberField("bestSellPrice", bestSellPrice);
+        if (quoted) {
+            final double midPrice = (bestBuyPrice + bestSellPrice) / 2.0;
+
+            generator.writeNumberField("spread", bestSellPrice - bestBuyPrice);
+            generator.writeNumberField("relativeSpread", (bestSellPrice - bestBuyPrice) / midPrice);
+            generator.writeNumberField("midPrice", midPrice);
+            writeNumberField(generator, "microPrice", microPrice(snapshot, bestBuyPrice, bestSellPrice));
+        }
+
+        // the 5 levels
+        generator.writeObjectFieldStart("buyDepth");
+        generator.writeNumberField("volume", buyVolume);
+        writeNumberField(generator, "weightedPrice", buyWeightedPrice(snapshot, buyVolume));
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("sellDepth");
+        generator.writeNumberField("volume", sellVolume);
+        writeNumberField(generator, "weightedPrice", sellWeightedPrice(snapshot, sellVolume));
+        generator.writeEndObject();
+        if (buyVolume + sellVolume != 0) {
+            generator.writeNumberField("imbalance", (double) (buyVolume - sellVolume) / (buyVolume + sellVolume));
+        }
+
+        // the last price over time
+        generator.writeArrayFieldStart("movingAverages");
+        for (int i = 0; i != AVERAGE_WINDOWS.length; i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("window", AVERAGE_WINDOWS[i]);
+            generator.writeNumberField("samples", averages[i].size());
+            writeNumberField(generator, "value", averages[i].mean());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("ewma");
+        for (int i = 0; i != EWMA_HALF_LIVES.length; i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("halfLife", EWMA_HALF_LIVES[i].toSeconds());
+            writeNumberField(generator, "value", samples == 0 ? Double.NaN : ewmas[i]);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeObjectFieldStart("volatility");
+        generator.writeNumberField("window", VOLATILITY_WINDOW);
+        generator.writeNumberField("samples", returns.size());
+        writeNumberField(generator, "value", returns.standardDeviation());
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    // util
+
+    private static double ewma(double previous, double value, long elapsed, Duration halfLife) {
+        // irregular updates weigh by the time elapsed since the previous one
+        final double alpha = 1 - Math.pow(0.5, (double) Math.max(0, elapsed) / halfLife.toMillis());
+
+        return previous + (alpha * (value - previous));
+    }
+
+    private static double microPrice(MarketSnapshot snapshot, int bestBuyPrice, int bestSellPrice) {
+        long buyVolume = 0;
+        long sellVolume = 0;
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            if (snapshot.getBuyPrice(i) == bestBuyPrice) {
+                buyVolume += snapshot.getBuyVolume(i);
+            }
+            if (snapshot.getSellPrice(i) == bestSellPrice) {
+                sellVolume += snapshot.getSellVolume(i);
+            }
+        }
+        // the best prices weighted by the volume on the opposite side
+        if (buyVolume + sellVolume == 0) {
+            return Double.NaN;
+        }
+        return ((double) bestBuyPrice * sellVolume + (double) bestSellPrice * buyVolume) / (buyVolume + sellVolume);
+    }
+
+    private static long buyVolume(MarketSnapshot snapshot) {
+        long volume = 0;
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            volume += snapshot.getBuyVolume(i);
+        }
+        return volume;
+    }
+
+    private static long sellVolume(MarketSnapshot snapshot) {
+        long volume = 0;
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            volume += snapshot.getSellVolume(i);
+        }
+        return volume;
+    }
+
+    private static double buyWeightedPrice(MarketSnapshot snapshot, long volume) {
+        double total = 0;
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            total += (double) snapshot.getBuyPrice(i) * snapshot.getBuyVolume(i);
+        }
+        return volume == 0 ? Double.NaN : total / volume;
+    }
+
+    private static double sellWeightedPrice(MarketSnapshot snapshot, long volume) {
+        double total = 0;
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            total += (double) snapshot.getSellPrice(i) * snapshot.getSellVolume(i);
+        }
+        return volume == 0 ? Double.NaN : total / volume;
+    }
+
+    private static void writeNumberField(JsonGenerator generator, String name, double value) throws IOException {
+        // json has no representation for the undefined values
+        if (Double.isNaN(value)) {
+            generator.writeNullField(name);
+        } else {
+            generator.writeNumberField(name, value);
+        }
+    }
+
+    private static final class Window {
+
+        // a ring of the last values, with their running sums
+        private final double[] values;
+        private int size;
+        private int next;
+        private double sum;
+        private double sumOfSquares;
+
+        /* Constructors */
+
+        private Window(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        /* Methods */
+
+        private void add(double value) {
+            if (size == values.length) {
+                final double evicted = values[next];
+
+                sum -= evicted;
+                sumOfSquares -= evicted * evicted;
+            } else {
+                size++;
+            }
+            values[next] = value;
+            next = (next + 1) % values.length;
+            sum += value;
+            sumOfSquares += value * value;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private double mean() {
+            return size == 0 ? Double.NaN : sum / size;
+        }
+
+        private double standardDeviation() {
+            if (size < 2) {
+                return Double.NaN;
+            }
+
+            final double mean = sum / size;
+
+            // the running sums drift slightly, never let the variance go negative
+            return Math.sqrt(Math.max(0, (sumOfSquares - (size * mean * mean)) / (size - 1)));
+        }
+    }
+}
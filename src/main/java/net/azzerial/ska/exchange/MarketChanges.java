@@ -0,0 +1,177 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.javalin.http.ContentType;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class MarketChanges implements MarketConsumer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // the amount of deltas kept, older versions get a full snapshot
+    private static final int CAPACITY = 1024;
+    // the maximum amount of distinct 'since' versions cached per snapshot
+    private static final int MAX_CACHED = 64;
+    // the change mask bits, one per field of the market
+    private static final int LAST_PRICE_BIT = 1;
+    private static final int BUY_OFFERS_SHIFT = 1;
+    private static final int SELL_OFFERS_SHIFT = 1 + MarketSnapshot.DEPTH;
+    private static final int ALL_CHANGED = (1 << (1 + (2 * MarketSnapshot.DEPTH))) - 1;
+
+    private final long[] versions = new long[CAPACITY];
+    private final int[] masks = new int[CAPACITY];
+    private MarketSnapshot latest;
+    private Map<Long, Payload> cache = new ConcurrentHashMap<>();
+
+    /* Methods */
+
+    @Override
+    public void onMarketSnapshot(@NotNull MarketSnapshot snapshot) {
+        synchronized (this) {
+            final MarketSnapshot previous = this.latest;
+
+            // a gap in the versions invalidates every delta before it
+            if (previous != null && previous.getVersion() == snapshot.getVersion() - 1) {
+                final int index = (int) (snapshot.getVersion() % CAPACITY);
+
+                versions[index] = snapshot.getVersion();
+                masks[index] = diff(previous, snapshot);
+            }
+            this.latest = snapshot;
+            this.cache = new ConcurrentHashMap<>();
+        }
+    }
+
+    public Payload get(long since) {
+        final MarketSnapshot latest;
+        final Map<Long, Payload> cache;
+        int mask = 0;
+
+        synchronized (this) {
+            latest = this.latest;
+            cache = this.cache;
+
+            if (latest == null) {
+                return null;
+            }
+
+            final Payload payload = cache.get(since);
+
+            if (payload != null) {
+                return payload;
+            }
+            // the client may be ahead of the deltas, the snapshot being published before they are computed
+            if (since > latest.getVersion()) {
+                mask = -2;
+            } else if (since < 0 || latest.getVersion() - since > CAPACITY) {
+                mask = -1;
+            }
+            for (long version = since + 1; mask >= 0 && version <= latest.getVersion(); version++) {
+                final int index = (int) (version % CAPACITY);
+
+                if (versions[index] != version) {
+                    mask = -1;
+                } else {
+                    mask |= masks[index];
+                }
+            }
+        }
+
+        final Payload payload;
+
+        if (mask == -2) {
+            payload = json(since, since, latest, 0, false);
+        } else if (mask == -1) {
+            payload = json(since, latest.getVersion(), latest, ALL_CHANGED, true);
+        } else {
+            payload = json(since, latest.getVersion(), latest, mask, false);
+        }
+
+        if (cache.size() < MAX_CACHED) {
+            cache.putIfAbsent(since, payload);
+        }
+        return payload;
+    }
+
+    /* Internal */
+
+    private static int diff(MarketSnapshot previous, MarketSnapshot snapshot) {
+        int mask = 0;
+
+        if (previous.getLastPrice() != snapshot.getLastPrice()) {
+            mask |= LAST_PRICE_BIT;
+        }
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            if (previous.getBuyPrice(i) != snapshot.getBuyPrice(i) || previous.getBuyVolume(i) != snapshot.getBuyVolume(i)) {
+                mask |= 1 << (BUY_OFFERS_SHIFT + i);
+            }
+            if (previous.getSellPrice(i) != snapshot.getSellPrice(i) || previous.getSellVolume(i) != snapshot.getSellVolume(i)) {
+                mask |= 1 << (SELL_OFFERS_SHIFT + i);
+            }
+        }
+        return mask;
+    }
+
+    private static Payload json(long from, long to, MarketSnapshot snapshot, int mask, boolean full) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeNumberField("from", from);
+            generator.writeNumberField("to", to);
+            generator.writeBooleanField("full", full);
+            if ((mask & LAST_PRICE_BIT) != 0) {
+                generator.writeNumberField("lastPrice", snapshot.getLastPrice());
+            }
+            generator.writeArrayFieldStart("buyOffers");
+            for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+                if ((mask & (1 << (BUY_OFFERS_SHIFT + i))) != 0) {
+                    writeOffer(generator, i, snapshot.getBuyPrice(i), snapshot.getBuyVolume(i));
+                }
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("sellOffers");
+            for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+                if ((mask & (1 << (SELL_OFFERS_SHIFT + i))) != 0) {
+                    writeOffer(generator, i, snapshot.getSellPrice(i), snapshot.getSellVolume(i));
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize the market changes", e);
+        }
+        return Payload.of(out.toByteArray(), ContentType.APPLICATION_JSON.getMimeType());
+    }
+
+    private static void writeOffer(JsonGenerator generator, int index, int price, int volume) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        generator.writeNumberField("price", price);
+        generator.writeNumberField("volume", volume);
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import org.jetbrains.annotations.NotNull;
+
+@FunctionalInterface
+public interface MarketConsumer {
+
+    // called on a thread dedicated to the consumer, after the snapshot has been published
+    void onMarketSnapshot(@NotNull MarketSnapshot snapshot);
+
+    // a durable consumer handles every snapshot, holding back the publisher instead of skipping the ones it lags behind
+    default boolean isDurable() {
+        return false;
+    }
+}
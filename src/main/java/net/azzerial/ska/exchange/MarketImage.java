@@ -16,16 +16,21 @@
 
 package net.azzerial.ska.exchange;
 
-import net.azzerial.skhc.entities.Market;
-
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
+import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Base64;
 import java.util.Locale;
 import java.util.Objects;
 
@@ -35,6 +40,8 @@ public final class MarketImage {
     private static final int WIDTH = 1280;
     private static final int HEIGHT = 720;
     private static final int RADIUS = 24;
+    // the quality of the jpeg images, from 0 to 1
+    private static final float JPEG_QUALITY = 0.85f;
     // formats
     private static final DateTimeFormatter CREATION_TIME_FORMAT = DateTimeFormatter.ofPattern("'Market offers on' EEEE, d MMMM yyyy 'at' HH:mm:ss ('UTC'x).", Locale.ENGLISH);
     private static final NumberFormat NUMBER_FORMAT = NumberFormat.getIntegerInstance(Locale.ENGLISH);
@@ -54,6 +61,14 @@ public final class MarketImage {
     private static final BufferedImage CROWN_21_IMAGE;
     private static final BufferedImage CROWN_32_IMAGE;
     private static final BufferedImage ENERGY_24_IMAGE;
+    // svg icons, embedded as data uris
+    private static final String CROWN_21_URI;
+    private static final String CROWN_32_URI;
+    private static final String ENERGY_24_URI;
+    // glyphs
+    private static final GlyphAtlas REGULAR_GLYPHS;
+    private static final GlyphAtlas LARGE_GLYPHS;
+    private static final GlyphAtlas LARGE_ITALIC_GLYPHS;
 
     static {
         final ClassLoader classLoader = MarketImage.class.getClassLoader();
@@ -67,6 +82,12 @@ public final class MarketImage {
             CROWN_21_IMAGE = ImageIO.read(Objects.requireNonNull(classLoader.getResourceAsStream("crown_21.png")));
             CROWN_32_IMAGE = ImageIO.read(Objects.requireNonNull(classLoader.getResourceAsStream("crown_32.png")));
             ENERGY_24_IMAGE = ImageIO.read(Objects.requireNonNull(classLoader.getResourceAsStream("energy_24.png")));
+            REGULAR_GLYPHS = new GlyphAtlas(REGULAR_FONT);
+            LARGE_GLYPHS = new GlyphAtlas(LARGE_FONT);
+            LARGE_ITALIC_GLYPHS = new GlyphAtlas(LARGE_ITALIC_FONT);
+            CROWN_21_URI = dataUri(CROWN_21_IMAGE);
+            CROWN_32_URI = dataUri(CROWN_32_IMAGE);
+            ENERGY_24_URI = dataUri(ENERGY_24_IMAGE);
         } catch (IOException | FontFormatException e) {
             throw new ExceptionInInitializerError(e);
         }
@@ -116,126 +137,332 @@ public final class MarketImage {
         g.dispose();
     }
 
-    private final Market market;
+    // regions
+    static final Rectangle TITLE_REGION = new Rectangle(32, 32, 1216, 64);
+    static final int BUY_OFFERS_LEFT = 56;
+    static final int SELL_OFFERS_LEFT = 680;
+    // the first row of the footer, the rows above it don't depend on the timezone
+    static final int FOOTER_TOP = 624;
+
+    private final MarketSnapshot snapshot;
     private final OffsetDateTime dateTime;
     private final BufferedImage bufferedImage;
 
     /* Constructors */
 
-    public MarketImage(Market market, ZoneId zoneId) {
-        this.market = market;
-        this.dateTime = OffsetDateTime.now(zoneId);
-        this.bufferedImage = new BufferedImage(
-            TEMPLATE.getColorModel(),
-            TEMPLATE.copyData(TEMPLATE.getRaster().createCompatibleWritableRaster()),
-            TEMPLATE.isAlphaPremultiplied(),
-            null
-        );
+    public MarketImage(MarketSnapshot snapshot, ZoneId zoneId) {
+        this(snapshot, zoneId, copy(TEMPLATE));
+    }
+
+    MarketImage(MarketSnapshot snapshot, ZoneId zoneId, BufferedImage bufferedImage) {
+        this.snapshot = snapshot;
+        this.dateTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(snapshot.getReceivedAt()), zoneId);
+        this.bufferedImage = bufferedImage;
     }
 
     /* Methods */
 
-    public synchronized void draw() {
-        final Graphics2D g = bufferedImage.createGraphics();
+    synchronized void draw() {
+        final Graphics2D g = createGraphics(bufferedImage);
 
-        // init
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        // draw components
+        drawTitle(g, bufferedImage, snapshot.getLastPrice());
+        drawOfferTitles(g, bufferedImage);
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            drawOffer(g, bufferedImage, BUY_OFFERS_LEFT, i, snapshot.getBuyPrice(i), snapshot.getBuyVolume(i));
+            drawOffer(g, bufferedImage, SELL_OFFERS_LEFT, i, snapshot.getSellPrice(i), snapshot.getSellVolume(i));
+        }
+        drawFooter(g, bufferedImage, dateTime);
+
+        // clean
+        g.dispose();
+    }
+
+    public synchronized void drawFooter() {
+        final Graphics2D g = createGraphics(bufferedImage);
 
         // draw components
-        drawTitle(g);
-        drawOffers(g);
-        drawFooter(g);
+        drawFooter(g, bufferedImage, dateTime);
 
         // clean
         g.dispose();
     }
 
-    public InputStream writeToStream() {
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] toByteArray() {
+        return PngEncoder.INDEXED.encode(bufferedImage);
+    }
 
-        InputStream in = null;
-        try {
-            ImageIO.write(bufferedImage, "png", out);
-            in = new ByteArrayInputStream(out.toByteArray());
-        } catch (IOException e) {
-            e.printStackTrace();
+    public byte[] toByteArray(MarketImageFormat format, int width) {
+        final BufferedImage image = width == WIDTH ? bufferedImage : scale(bufferedImage, width, (width * HEIGHT) / WIDTH);
+
+        switch (format) {
+            case PNG:
+                return PngEncoder.TRUECOLOR.encode(image);
+            case INDEXED_PNG:
+                return PngEncoder.INDEXED.encode(image);
+            case JPEG:
+                return jpeg(image);
+            default:
+                throw new IllegalArgumentException("Unsupported raster format: " + format);
+        }
+    }
+
+    public static byte[] toSvg(MarketSnapshot snapshot, ZoneId zoneId, int width) {
+        final OffsetDateTime dateTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(snapshot.getReceivedAt()), zoneId);
+        final StringBuilder svg = new StringBuilder(8192);
+
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"")
+            .append(" width=\"").append(width).append("\" height=\"").append((width * HEIGHT) / WIDTH).append('"')
+            .append(" viewBox=\"0 0 ").append(WIDTH).append(' ').append(HEIGHT).append('"')
+            .append(" font-family=\"'Arial Black', Arial, sans-serif\" font-weight=\"900\">");
+        svg.append("<defs>");
+        svgIcon(svg, "crown21", 21, CROWN_21_URI);
+        svgIcon(svg, "crown32", 32, CROWN_32_URI);
+        svgIcon(svg, "energy24", 24, ENERGY_24_URI);
+        svg.append("</defs>");
+
+        // boxes, the same as the template
+        svgRect(svg, 0, 0, WIDTH, HEIGHT, 0, BACKGROUND_COLOR);
+        svgRect(svg, 32, 32, 1216, 64, RADIUS, TITLE_BOX_COLOR);
+        svgRect(svg, 32, 128, 592, 464, RADIUS, BOX_COLOR);
+        svgRect(svg, 656, 128, 592, 464, RADIUS, BOX_COLOR);
+        for (int i = 0; i != 5; i++) {
+            svgRect(svg, 56, 192 + (i * 78), 544, 64, RADIUS, CELL_BOX_COLOR);
+            svgRect(svg, 680, 192 + (i * 78), 544, 64, RADIUS, CELL_BOX_COLOR);
+            svgRect(svg, 68, 204 + (i * 78), 266, 40, RADIUS, BOX_COLOR);
+            svgRect(svg, 692, 204 + (i * 78), 266, 40, RADIUS, BOX_COLOR);
         }
-        return in;
+        svgRect(svg, 32, 624, 1216, 64, RADIUS, BOX_COLOR);
+
+        // title, positioned with the raster glyph metrics
+        final String lastPrice = NUMBER_FORMAT.format(snapshot.getLastPrice());
+        final int titleStart = center(350 + LARGE_GLYPHS.width(lastPrice), WIDTH);
+
+        svgText(svg, "Last trade price:", titleStart, 74, 32, true, PRICE_TEXT_COLOR);
+        svgUse(svg, "crown32", titleStart + 314, 47);
+        svgText(svg, lastPrice, titleStart + 350, 74, 32, false, PRICE_TEXT_COLOR);
+
+        // offers
+        svgText(svg, "Top Offers to Buy", 56, 168, 22, false, TEXT_COLOR);
+        svgText(svg, "Top Offers to Sell", 680, 168, 22, false, TEXT_COLOR);
+        svgUse(svg, "energy24", 274, 148);
+        svgUse(svg, "energy24", 898, 148);
+        svgText(svg, "100", 300, 168, 22, false, ENERGY_TEXT_COLOR);
+        svgText(svg, "100", 924, 168, 22, false, ENERGY_TEXT_COLOR);
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            svgOffer(svg, BUY_OFFERS_LEFT, i, snapshot.getBuyPrice(i), snapshot.getBuyVolume(i));
+            svgOffer(svg, SELL_OFFERS_LEFT, i, snapshot.getSellPrice(i), snapshot.getSellVolume(i));
+        }
+
+        // footer
+        svgText(svg, dateTime.format(CREATION_TIME_FORMAT), 56, 664, 22, false, TEXT_COLOR);
+        svg.append("</svg>");
+        return svg.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     /* Internal */
 
-    private void drawTitle(Graphics2D g) {
-        final String lastPrice = NUMBER_FORMAT.format(market.lastPrice);
-        final int titleStart = center(
-            350 + (int) LARGE_FONT.getStringBounds(lastPrice, g.getFontRenderContext()).getWidth(),
-            WIDTH
+    static BufferedImage template() {
+        return copy(TEMPLATE);
+    }
+
+    static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(
+            image.getColorModel(),
+            image.copyData(image.getRaster().createCompatibleWritableRaster()),
+            image.isAlphaPremultiplied(),
+            null
         );
+    }
+
+    static Graphics2D createGraphics(BufferedImage image) {
+        final Graphics2D g = image.createGraphics();
+
+        // init
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        return g;
+    }
+
+    static void clear(Graphics2D g, Rectangle region) {
+        final int x2 = region.x + region.width;
+        final int y2 = region.y + region.height;
+
+        // restore the region from the template, without copying the whole template
+        g.drawImage(TEMPLATE, region.x, region.y, x2, y2, region.x, region.y, x2, y2, null);
+    }
+
+    static Rectangle offerRegion(int left, int index) {
+        return new Rectangle(left - 24, 192 + (index * 78), 592, 64);
+    }
+
+    static void drawTitle(Graphics2D g, BufferedImage image, int price) {
+        final String lastPrice = NUMBER_FORMAT.format(price);
+        final int titleStart = center(350 + LARGE_GLYPHS.width(lastPrice), WIDTH);
 
         // draw text
-        g.setColor(PRICE_TEXT_COLOR);
-        g.setFont(LARGE_ITALIC_FONT);
-        g.drawString("Last trade price:", titleStart, 74);
+        LARGE_ITALIC_GLYPHS.draw(g, image, "Last trade price:", titleStart, 74, PRICE_TEXT_COLOR);
         g.drawImage(CROWN_32_IMAGE, null, titleStart + 314, 47);
-        g.setFont(LARGE_FONT);
-        g.drawString(lastPrice, titleStart + 350, 74);
+        LARGE_GLYPHS.draw(g, image, lastPrice, titleStart + 350, 74, PRICE_TEXT_COLOR);
     }
 
-    private void drawOffers(Graphics2D g) {
+    static void drawOfferTitles(Graphics2D g, BufferedImage image) {
         // draw titles
-        g.setColor(TEXT_COLOR);
-        g.setFont(REGULAR_FONT);
-        g.drawString("Top Offers to Buy", 56, 168);
-        g.drawString("Top Offers to Sell", 680, 168);
+        REGULAR_GLYPHS.draw(g, image, "Top Offers to Buy", 56, 168, TEXT_COLOR);
+        REGULAR_GLYPHS.draw(g, image, "Top Offers to Sell", 680, 168, TEXT_COLOR);
         g.drawImage(ENERGY_24_IMAGE, null, 274, 148);
         g.drawImage(ENERGY_24_IMAGE, null, 898, 148);
-        g.setColor(ENERGY_TEXT_COLOR);
-        g.drawString("100", 300, 168);
-        g.drawString("100", 924, 168);
+        REGULAR_GLYPHS.draw(g, image, "100", 300, 168, ENERGY_TEXT_COLOR);
+        REGULAR_GLYPHS.draw(g, image, "100", 924, 168, ENERGY_TEXT_COLOR);
+    }
 
-        // draw cells
-        for (int i = 0; i != 5; i++) {
-            final String buyPrice = NUMBER_FORMAT.format(market.buyOffers[i].price);
-            final String sellPrice = NUMBER_FORMAT.format(market.sellOffers[i].price);
-            final String buyVolume = NUMBER_FORMAT.format(market.buyOffers[i].volume);
-            final String sellVolume = NUMBER_FORMAT.format(market.sellOffers[i].volume);
-            final int buyPriceStart = padRight(
-                (int) REGULAR_FONT.getStringBounds(buyPrice, g.getFontRenderContext()).getWidth(),
-                214
-            );
-            final int sellPriceStart = padRight(
-                (int) REGULAR_FONT.getStringBounds(sellPrice, g.getFontRenderContext()).getWidth(),
-                214
-            );
-
-            // draw price texts
-            g.drawImage(CROWN_21_IMAGE, null, 80, 214 + (i * 78));
-            g.drawImage(CROWN_21_IMAGE, null, 704, 214 + (i * 78));
-            g.setColor(PRICE_TEXT_COLOR);
-            g.drawString(buyPrice, 108 + buyPriceStart, 232 + (i * 78));
-            g.drawString(sellPrice, 732 + sellPriceStart, 232 + (i * 78));
-
-            // draw volume texts
-            g.setColor(TEXT_COLOR);
-            g.drawString("x " + buyVolume, 352, 232 + (i * 78));
-            g.drawString("x " + sellVolume, 976, 232 + (i * 78));
-        }
+    static void drawOffer(Graphics2D g, BufferedImage image, int left, int index, int offerPrice, int offerVolume) {
+        final String price = NUMBER_FORMAT.format(offerPrice);
+        final String volume = NUMBER_FORMAT.format(offerVolume);
+        final int priceStart = padRight(REGULAR_GLYPHS.width(price), 214);
+
+        // draw price text
+        g.drawImage(CROWN_21_IMAGE, null, left + 24, 214 + (index * 78));
+        REGULAR_GLYPHS.draw(g, image, price, left + 52 + priceStart, 232 + (index * 78), PRICE_TEXT_COLOR);
+
+        // draw volume text
+        REGULAR_GLYPHS.draw(g, image, "x " + volume, left + 296, 232 + (index * 78), TEXT_COLOR);
+    }
+
+    static void drawFooter(Graphics2D g, BufferedImage image, OffsetDateTime dateTime) {
+        drawFooter(g, image, dateTime, 0);
+    }
+
+    static BufferedImage footer(MarketSnapshot snapshot, ZoneId zoneId) {
+        final OffsetDateTime dateTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(snapshot.getReceivedAt()), zoneId);
+        final BufferedImage footer = new BufferedImage(WIDTH, HEIGHT - FOOTER_TOP, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = createGraphics(footer);
+
+        // the rows of the template below the footer top, with the footer text
+        g.drawImage(TEMPLATE, 0, -FOOTER_TOP, null);
+        drawFooter(g, footer, dateTime, FOOTER_TOP);
+        g.dispose();
+        return footer;
     }
 
-    private void drawFooter(Graphics2D g) {
+    private static void drawFooter(Graphics2D g, BufferedImage image, OffsetDateTime dateTime, int top) {
         // draw text
-        g.setColor(TEXT_COLOR);
-        g.setFont(REGULAR_FONT);
-        g.drawString(dateTime.format(CREATION_TIME_FORMAT), 56, 664);
+        REGULAR_GLYPHS.draw(g, image, dateTime.format(CREATION_TIME_FORMAT), 56, 664 - top, TEXT_COLOR);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage scaled = image;
+
+        // halve the image until the target size, bilinear filtering alone drops pixels past half the size
+        do {
+            final int stepWidth = Math.max(width, scaled.getWidth() / 2);
+            final int stepHeight = Math.max(height, scaled.getHeight() / 2);
+            final BufferedImage step = new BufferedImage(stepWidth, stepHeight, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D g = step.createGraphics();
+
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(scaled, 0, 0, stepWidth, stepHeight, null);
+            g.dispose();
+            scaled = step;
+        } while (scaled.getWidth() != width || scaled.getHeight() != height);
+        return scaled;
+    }
+
+    private static byte[] jpeg(BufferedImage image) {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 8);
+
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static void svgOffer(StringBuilder svg, int left, int index, int offerPrice, int offerVolume) {
+        final String price = NUMBER_FORMAT.format(offerPrice);
+        final String volume = NUMBER_FORMAT.format(offerVolume);
+        final int priceStart = padRight(REGULAR_GLYPHS.width(price), 214);
+
+        svgUse(svg, "crown21", left + 24, 214 + (index * 78));
+        svgText(svg, price, left + 52 + priceStart, 232 + (index * 78), 22, false, PRICE_TEXT_COLOR);
+        svgText(svg, "x " + volume, left + 296, 232 + (index * 78), 22, false, TEXT_COLOR);
+    }
+
+    private static void svgIcon(StringBuilder svg, String id, int size, String uri) {
+        svg.append("<image id=\"").append(id).append("\" width=\"").append(size).append("\" height=\"").append(size)
+            .append("\" xlink:href=\"").append(uri).append("\"/>");
+    }
+
+    private static void svgUse(StringBuilder svg, String id, int x, int y) {
+        svg.append("<use xlink:href=\"#").append(id).append("\" x=\"").append(x).append("\" y=\"").append(y).append("\"/>");
+    }
+
+    private static void svgRect(StringBuilder svg, int x, int y, int width, int height, int arc, Color color) {
+        svg.append("<rect x=\"").append(x).append("\" y=\"").append(y)
+            .append("\" width=\"").append(width).append("\" height=\"").append(height).append('"');
+        // java2d round rects take the arc diameter
+        if (arc != 0) {
+            svg.append(" rx=\"").append(arc / 2).append('"');
+        }
+        svg.append(" fill=\"").append(hex(color)).append("\"/>");
+    }
+
+    private static void svgText(StringBuilder svg, String text, int x, int y, int size, boolean italic, Color color) {
+        svg.append("<text x=\"").append(x).append("\" y=\"").append(y).append("\" font-size=\"").append(size).append('"');
+        if (italic) {
+            svg.append(" font-style=\"italic\"");
+        }
+        svg.append(" fill=\"").append(hex(color)).append("\">");
+        for (int i = 0; i != text.length(); i++) {
+            final char c = text.charAt(i);
+
+            switch (c) {
+                case '&':
+                    svg.append("&amp;");
+                    break;
+                case '<':
+                    svg.append("&lt;");
+                    break;
+                case '>':
+                    svg.append("&gt;");
+                    break;
+                default:
+                    svg.append(c);
+            }
+        }
+        svg.append("</text>");
+    }
+
+    private static String dataUri(BufferedImage image) throws IOException {
+        final BufferedImage argb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Graphics2D g = argb.createGraphics();
+
+        // re-encoding drops the metadata and padded palette of the resource files
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        ImageIO.write(argb, "png", out);
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(out.toByteArray());
     }
 
     // util
 
-    private int center(int elementSize, int parentSize) {
+    private static String hex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    private static int center(int elementSize, int parentSize) {
         return Math.floorDiv(parentSize - elementSize, 2);
     }
 
-    private int padRight(int elementSize, int parentSize) {
+    private static int padRight(int elementSize, int parentSize) {
         return parentSize - elementSize;
     }
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import net.azzerial.ska.metrics.Counter;
+import net.azzerial.ska.metrics.LatencyHistogram;
+import net.azzerial.ska.metrics.Metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.BufferedImage;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class MarketImageCache {
+
+    // the timezone rendered ahead of time on every market update
+    public static final ZoneId DEFAULT_ZONE = ZoneId.of("UTC+00");
+    // the widths the images can be served at, the height keeping the 16:9 ratio
+    public static final List<Integer> WIDTHS = List.of(320, 640, 960, 1280);
+    public static final int DEFAULT_WIDTH = 1280;
+    // the maximum amount of variants (timezone, format and width) cached per market
+    private static final int MAX_VARIANTS = 256;
+    // metrics
+    private static final LatencyHistogram DRAW_LATENCY = Metrics.histogram("ska_image_render_seconds", "Time spent rendering the market images.", "stage", "draw");
+    private static final LatencyHistogram BODY_LATENCY = Metrics.histogram("ska_image_render_seconds", "Time spent rendering the market images.", "stage", "body");
+    private static final LatencyHistogram ENCODE_LATENCY = Metrics.histogram("ska_image_render_seconds", "Time spent rendering the market images.", "stage", "encode");
+    private static final Counter ENCODED_BYTES = Metrics.counter("ska_image_encoded_bytes_total", "Bytes of encoded market images.");
+    private static final Counter REJECTED_RENDERS = Metrics.counter("ska_image_rejected_renders_total", "Image renders rejected because the render queue was full.");
+    // the bounded pool rendering the images, rejecting renders instead of piling them up
+    private static final int RENDER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int RENDER_QUEUE_CAPACITY = 16;
+    private static final ThreadPoolExecutor RENDER_EXECUTOR = new ThreadPoolExecutor(
+        RENDER_THREADS,
+        RENDER_THREADS,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(RENDER_QUEUE_CAPACITY),
+        new RenderThreadFactory()
+    );
+
+    static {
+        Metrics.gauge("ska_image_render_queue_size", "Image renders waiting for a render thread.", () -> RENDER_EXECUTOR.getQueue().size());
+    }
+
+    private final MarketSnapshot snapshot;
+    // the retained frame of the market, only the offers which changed since the last render are repainted
+    private volatile MarketRenderer renderer;
+    // the rendered and in-flight images, concurrent requests for a variant share a single render
+    private final Map<Variant, CompletableFuture<Payload>> images = new ConcurrentHashMap<>();
+    // the encoded rows above the footer, shared by the png images of every timezone
+    private final Map<MarketImageFormat, PngEncoder.Body> bodies = new ConcurrentHashMap<>();
+
+    /* Constructors */
+
+    MarketImageCache(MarketSnapshot snapshot, MarketRenderer renderer) {
+        this.snapshot = snapshot;
+        this.renderer = renderer;
+    }
+
+    /* Methods */
+
+    public void prepare() {
+        // rendered ahead of the requests on the render pool, the publisher never waits on the renderer
+        if (RENDER_EXECUTOR.getQueue().isEmpty()) {
+            get(new Variant(offset(DEFAULT_ZONE), MarketImageFormat.DEFAULT, DEFAULT_WIDTH), RENDER_EXECUTOR);
+        }
+    }
+
+    public CompletableFuture<Payload> get(ZoneId zoneId, MarketImageFormat format, int width) {
+        if (!WIDTHS.contains(width)) {
+            throw new IllegalArgumentException("Unsupported image width: " + width);
+        }
+        return get(new Variant(offset(zoneId), format, width), RENDER_EXECUTOR);
+    }
+
+    /* Internal */
+
+    private CompletableFuture<Payload> get(Variant variant, Executor executor) {
+        final CompletableFuture<Payload> existing = images.get(variant);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        // only the first request of a variant renders it, the others wait on its future
+        final CompletableFuture<Payload> future = new CompletableFuture<>();
+        final CompletableFuture<Payload> raced = images.putIfAbsent(variant, future);
+
+        if (raced != null) {
+            return raced;
+        }
+
+        // don't let arbitrary timezones grow the cache indefinitely, the extra variants are only coalesced
+        final boolean retained = images.size() <= MAX_VARIANTS;
+
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(render(variant));
+                } catch (Throwable e) {
+                    // errors too, a failed render must never stay cached
+                    images.remove(variant, future);
+                    future.completeExceptionally(e);
+                }
+                if (!retained) {
+                    images.remove(variant, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            REJECTED_RENDERS.increment();
+            images.remove(variant, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private Payload render(Variant variant) {
+        final long start = System.nanoTime();
+
+        // vector images are written straight from the snapshot
+        if (variant.format == MarketImageFormat.SVG) {
+            final byte[] bytes = MarketImage.toSvg(snapshot, variant.zoneId, variant.width);
+
+            ENCODE_LATENCY.recordSince(start);
+            ENCODED_BYTES.add(bytes.length);
+            return Payload.of(bytes, variant.format.getMimeType());
+        }
+
+        // full size png images are stitched from the shared body and the footer of the timezone
+        if (variant.width == DEFAULT_WIDTH && (variant.format == MarketImageFormat.PNG || variant.format == MarketImageFormat.INDEXED_PNG)) {
+            final PngEncoder encoder = variant.format == MarketImageFormat.PNG ? PngEncoder.TRUECOLOR : PngEncoder.INDEXED;
+            final PngEncoder.Body body = bodies.computeIfAbsent(variant.format, format -> encodeBody(encoder));
+            final long bodyEncoded = System.nanoTime();
+            final BufferedImage footer = MarketImage.footer(snapshot, variant.zoneId);
+            final long drawn = System.nanoTime();
+            final byte[] bytes = encoder.encodeFooter(body, footer);
+
+            DRAW_LATENCY.record(drawn - bodyEncoded);
+            ENCODE_LATENCY.recordSince(drawn);
+            ENCODED_BYTES.add(bytes.length);
+            return Payload.of(bytes, variant.format.getMimeType());
+        }
+
+        final MarketImage image = renderer().render(snapshot, variant.zoneId);
+        final long drawn = System.nanoTime();
+        final byte[] bytes = image.toByteArray(variant.format, variant.width);
+
+        DRAW_LATENCY.record(drawn - start);
+        ENCODE_LATENCY.recordSince(drawn);
+        ENCODED_BYTES.add(bytes.length);
+        return Payload.of(bytes, variant.format.getMimeType());
+    }
+
+    private PngEncoder.Body encodeBody(PngEncoder encoder) {
+        final long start = System.nanoTime();
+        final PngEncoder.Body body = encoder.encodeBody(renderer().renderBody(snapshot), MarketImage.FOOTER_TOP);
+
+        BODY_LATENCY.recordSince(start);
+        return body;
+    }
+
+    private MarketRenderer renderer() {
+        MarketRenderer renderer = this.renderer;
+
+        // a snapshot outside of a market, racing threads may both draw a full frame
+        if (renderer == null) {
+            renderer = new MarketRenderer();
+            this.renderer = renderer;
+        }
+        return renderer;
+    }
+
+    private ZoneId offset(ZoneId zoneId) {
+        // the timezones sharing an offset at the market time render the same image
+        return zoneId.getRules().getOffset(Instant.ofEpochMilli(snapshot.getReceivedAt()));
+    }
+
+    private static final class RenderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        /* Methods */
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "image-render-" + count.incrementAndGet());
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static final class Variant {
+
+        private final ZoneId zoneId;
+        private final MarketImageFormat format;
+        private final int width;
+
+        /* Constructors */
+
+        private Variant(ZoneId zoneId, MarketImageFormat format, int width) {
+            this.zoneId = zoneId;
+            this.format = format;
+            this.width = width;
+        }
+
+        /* Methods */
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Variant)) {
+                return false;
+            }
+
+            final Variant other = (Variant) o;
+
+            return width == other.width && format == other.format && zoneId.equals(other.zoneId);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * ((31 * zoneId.hashCode()) + format.hashCode())) + width;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+public enum MarketImageFormat {
+
+    // a lossless 8-bit RGB image
+    PNG("png", "image/png"),
+    // an 8-bit palette image, the smallest raster representation
+    INDEXED_PNG("png8", "image/png"),
+    // a lossy image, smaller than the lossless one once downscaled
+    JPEG("jpeg", "image/jpeg"),
+    // a vector image, scaled by the client
+    SVG("svg", "image/svg+xml");
+
+    // the format served when the client has no preference
+    public static final MarketImageFormat DEFAULT = INDEXED_PNG;
+
+    private final String name;
+    private final String mimeType;
+
+    /* Constructors */
+
+    MarketImageFormat(String name, String mimeType) {
+        this.name = name;
+        this.mimeType = mimeType;
+    }
+
+    /* Getters */
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /* Methods */
+
+    @Nullable
+    public static MarketImageFormat fromName(String name) {
+        final String lowercase = name.toLowerCase(Locale.ROOT);
+
+        if (lowercase.equals("jpg")) {
+            return JPEG;
+        }
+        for (MarketImageFormat format : values()) {
+            if (format.name.equals(lowercase)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    public static MarketImageFormat negotiate(@Nullable String accept) {
+        if (accept == null || accept.isBlank()) {
+            return DEFAULT;
+        }
+
+        // an explicit entry takes precedence over the wildcards, 'q=0' refusing the format
+        final double png = AcceptHeader.mediaQuality(accept, PNG.mimeType);
+        final double svg = AcceptHeader.mediaQuality(accept, SVG.mimeType);
+        final double jpeg = AcceptHeader.mediaQuality(accept, JPEG.mimeType);
+
+        // on equal quality, the smallest raster representation wins
+        if (png > 0 && png >= svg && png >= jpeg) {
+            return DEFAULT;
+        }
+        if (svg > 0 && svg >= jpeg) {
+            return SVG;
+        }
+        if (jpeg > 0) {
+            return JPEG;
+        }
+        return null;
+    }
+}
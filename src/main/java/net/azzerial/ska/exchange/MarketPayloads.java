@@ -0,0 +1,185 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.javalin.http.ContentType;
+import net.azzerial.ska.metrics.Counter;
+import net.azzerial.ska.metrics.LatencyHistogram;
+import net.azzerial.ska.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+public final class MarketPayloads {
+
+    // the media type of the binary representations, described by the published market.proto
+    public static final String PROTOBUF = "application/x-protobuf";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // metrics
+    private static final LatencyHistogram SERIALIZE_LATENCY = Metrics.histogram("ska_market_serialize_seconds", "Time spent serializing the market views.");
+    private static final Counter SERIALIZED_BYTES = Metrics.counter("ska_market_serialized_bytes_total", "Bytes of serialized market views.");
+
+    public final Payload market;
+    public final Payload lastPrice;
+    public final Payload buyOffers;
+    public final Payload sellOffers;
+    public final Payload marketProto;
+    public final Payload buyOffersProto;
+    public final Payload sellOffersProto;
+
+    /* Constructors */
+
+    private MarketPayloads(
+        Payload market,
+        Payload lastPrice,
+        Payload buyOffers,
+        Payload sellOffers,
+        Payload marketProto,
+        Payload buyOffersProto,
+        Payload sellOffersProto
+    ) {
+        this.market = market;
+        this.lastPrice = lastPrice;
+        this.buyOffers = buyOffers;
+        this.sellOffers = sellOffers;
+        this.marketProto = marketProto;
+        this.buyOffersProto = buyOffersProto;
+        this.sellOffersProto = sellOffersProto;
+    }
+
+    static MarketPayloads of(MarketSnapshot snapshot) {
+        final long start = System.nanoTime();
+        final MarketPayloads payloads = new MarketPayloads(
+            json(snapshot, MarketPayloads::writeMarket),
+            Payload.of(Integer.toString(snapshot.getLastPrice()).getBytes(StandardCharsets.UTF_8), ContentType.TEXT_PLAIN.getMimeType()),
+            json(snapshot, MarketPayloads::writeBuyOffers),
+            json(snapshot, MarketPayloads::writeSellOffers),
+            proto(protoMarket(snapshot)),
+            proto(protoBuyOffers(snapshot, 1)),
+            proto(protoSellOffers(snapshot, 1))
+        );
+
+        SERIALIZE_LATENCY.recordSince(start);
+        SERIALIZED_BYTES.add(
+            payloads.market.getBytes().length
+            + payloads.lastPrice.getBytes().length
+            + payloads.buyOffers.getBytes().length
+            + payloads.sellOffers.getBytes().length
+            + payloads.marketProto.getBytes().length
+            + payloads.buyOffersProto.getBytes().length
+            + payloads.sellOffersProto.getBytes().length
+        );
+        return payloads;
+    }
+
+    /* Internal */
+
+    private static Payload json(MarketSnapshot snapshot, JsonWriter writer) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            writer.write(generator, snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize the market", e);
+        }
+        return Payload.of(out.toByteArray(), ContentType.APPLICATION_JSON.getMimeType());
+    }
+
+    private static void writeMarket(JsonGenerator generator, MarketSnapshot snapshot) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("lastPrice", snapshot.getLastPrice());
+        generator.writeFieldName("buyOffers");
+        writeBuyOffers(generator, snapshot);
+        generator.writeFieldName("sellOffers");
+        writeSellOffers(generator, snapshot);
+        generator.writeEndObject();
+    }
+
+    private static void writeBuyOffers(JsonGenerator generator, MarketSnapshot snapshot) throws IOException {
+        generator.writeStartArray();
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            writeOffer(generator, snapshot.getBuyPrice(i), snapshot.getBuyVolume(i));
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeSellOffers(JsonGenerator generator, MarketSnapshot snapshot) throws IOException {
+        generator.writeStartArray();
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            writeOffer(generator, snapshot.getSellPrice(i), snapshot.getSellVolume(i));
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeOffer(JsonGenerator generator, int price, int volume) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("price", price);
+        generator.writeNumberField("volume", volume);
+        generator.writeEndObject();
+    }
+
+    private static Payload proto(ProtoWriter writer) {
+        return Payload.of(writer.toByteArray(), PROTOBUF);
+    }
+
+    private static ProtoWriter protoMarket(MarketSnapshot snapshot) {
+        final ProtoWriter market = new ProtoWriter();
+
+        market.writeInt32(1, snapshot.getLastPrice());
+        protoBuyOffers(market, snapshot, 2);
+        protoSellOffers(market, snapshot, 3);
+        return market;
+    }
+
+    private static ProtoWriter protoBuyOffers(MarketSnapshot snapshot, int field) {
+        return protoBuyOffers(new ProtoWriter(), snapshot, field);
+    }
+
+    private static ProtoWriter protoBuyOffers(ProtoWriter writer, MarketSnapshot snapshot, int field) {
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            writer.writeMessage(field, protoOffer(snapshot.getBuyPrice(i), snapshot.getBuyVolume(i)));
+        }
+        return writer;
+    }
+
+    private static ProtoWriter protoSellOffers(MarketSnapshot snapshot, int field) {
+        return protoSellOffers(new ProtoWriter(), snapshot, field);
+    }
+
+    private static ProtoWriter protoSellOffers(ProtoWriter writer, MarketSnapshot snapshot, int field) {
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            writer.writeMessage(field, protoOffer(snapshot.getSellPrice(i), snapshot.getSellVolume(i)));
+        }
+        return writer;
+    }
+
+    private static ProtoWriter protoOffer(int price, int volume) {
+        return new ProtoWriter()
+            .writeInt32(1, price)
+            .writeInt32(2, volume);
+    }
+
+    @FunctionalInterface
+    private interface JsonWriter {
+
+        void write(JsonGenerator generator, MarketSnapshot snapshot) throws IOException;
+    }
+}
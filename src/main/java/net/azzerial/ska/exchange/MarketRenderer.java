@@ -0,0 +1,76 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.time.ZoneId;
+
+final class MarketRenderer {
+
+    // the retained frame, holding everything but the footer text
+    private final BufferedImage frame = MarketImage.template();
+    private MarketSnapshot drawn;
+
+    /* Methods */
+
+    MarketImage render(MarketSnapshot snapshot, ZoneId zoneId) {
+        // the footer depends on the timezone, it is only drawn onto the copy
+        final MarketImage marketImage = new MarketImage(snapshot, zoneId, renderBody(snapshot));
+
+        marketImage.drawFooter();
+        return marketImage;
+    }
+
+    synchronized BufferedImage renderBody(MarketSnapshot snapshot) {
+        update(snapshot);
+        return MarketImage.copy(frame);
+    }
+
+    /* Internal */
+
+    private void update(MarketSnapshot snapshot) {
+        final MarketSnapshot drawn = this.drawn;
+
+        if (drawn == snapshot) {
+            return;
+        }
+
+        final Graphics2D g = MarketImage.createGraphics(frame);
+
+        // only repaint the regions whose values differ from the drawn snapshot
+        if (drawn == null) {
+            MarketImage.drawOfferTitles(g, frame);
+        }
+        if (drawn == null || drawn.getLastPrice() != snapshot.getLastPrice()) {
+            MarketImage.clear(g, MarketImage.TITLE_REGION);
+            MarketImage.drawTitle(g, frame, snapshot.getLastPrice());
+        }
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            if (drawn == null || drawn.getBuyPrice(i) != snapshot.getBuyPrice(i) || drawn.getBuyVolume(i) != snapshot.getBuyVolume(i)) {
+                MarketImage.clear(g, MarketImage.offerRegion(MarketImage.BUY_OFFERS_LEFT, i));
+                MarketImage.drawOffer(g, frame, MarketImage.BUY_OFFERS_LEFT, i, snapshot.getBuyPrice(i), snapshot.getBuyVolume(i));
+            }
+            if (drawn == null || drawn.getSellPrice(i) != snapshot.getSellPrice(i) || drawn.getSellVolume(i) != snapshot.getSellVolume(i)) {
+                MarketImage.clear(g, MarketImage.offerRegion(MarketImage.SELL_OFFERS_LEFT, i));
+                MarketImage.drawOffer(g, frame, MarketImage.SELL_OFFERS_LEFT, i, snapshot.getSellPrice(i), snapshot.getSellVolume(i));
+            }
+        }
+        g.dispose();
+        this.drawn = snapshot;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import net.azzerial.skhc.entities.Market;
+import net.azzerial.skhc.entities.Offer;
+
+import java.lang.invoke.VarHandle;
+
+final class MarketRing {
+
+    private final int mask;
+    private final Slot[] slots;
+    // the renderer of the snapshots read from the ring
+    private final MarketRenderer renderer;
+    // the sequence of the last written slot, -1 until the first one
+    private volatile long cursor = -1;
+
+    /* Constructors */
+
+    MarketRing(int capacity, MarketRenderer renderer) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The ring capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.renderer = renderer;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i != capacity; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /* Getters */
+
+    long getCursor() {
+        return cursor;
+    }
+
+    /* Methods */
+
+    // single producer, copies the market into the next slot without allocating
+    void write(long receivedAt, Market market) {
+        final long sequence = cursor + 1;
+        final Slot slot = claim(sequence);
+
+        slot.receivedAt = receivedAt;
+        slot.lastPrice = market.lastPrice;
+        copy(market.buyOffers, slot.buyPrices, slot.buyVolumes);
+        copy(market.sellOffers, slot.sellPrices, slot.sellVolumes);
+        commit(slot, sequence);
+    }
+
+    // single producer, copies the snapshot into the next slot without allocating
+    void write(long receivedAt, MarketSnapshot market) {
+        final long sequence = cursor + 1;
+        final Slot slot = claim(sequence);
+
+        slot.receivedAt = receivedAt;
+        slot.lastPrice = market.getLastPrice();
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            slot.buyPrices[i] = market.getBuyPrice(i);
+            slot.buyVolumes[i] = market.getBuyVolume(i);
+            slot.sellPrices[i] = market.getSellPrice(i);
+            slot.sellVolumes[i] = market.getSellVolume(i);
+        }
+        commit(slot, sequence);
+    }
+
+    // copies a written slot into a snapshot, null when the producer lapped the reader and overwrote it
+    MarketSnapshot read(long sequence, long version) {
+        final Slot slot = slots[(int) sequence & mask];
+
+        if (slot.sequence != sequence) {
+            return null;
+        }
+
+        // the snapshot copies the arrays, a slot being overwritten meanwhile is detected below
+        final MarketSnapshot snapshot = new MarketSnapshot(version, slot.receivedAt, slot.lastPrice, slot.buyPrices, slot.buyVolumes, slot.sellPrices, slot.sellVolumes, renderer);
+
+        VarHandle.loadLoadFence();
+        return slot.sequence == sequence ? snapshot : null;
+    }
+
+    /* Internal */
+
+    private Slot claim(long sequence) {
+        final Slot slot = slots[(int) sequence & mask];
+
+        // mark the slot as being written before touching its content, the readers then discard it
+        slot.sequence = -1;
+        VarHandle.storeStoreFence();
+        return slot;
+    }
+
+    private void commit(Slot slot, long sequence) {
+        slot.sequence = sequence;
+        cursor = sequence;
+    }
+
+    private static void copy(Offer[] offers, int[] prices, int[] volumes) {
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            final Offer offer = offers != null && i < offers.length ? offers[i] : null;
+
+            prices[i] = offer == null ? 0 : offer.price;
+            volumes[i] = offer == null ? 0 : offer.volume;
+        }
+    }
+
+    private static final class Slot {
+
+        // the sequence of the market held, -1 while it is being written
+        private volatile long sequence = -1;
+        private long receivedAt;
+        private int lastPrice;
+        private final int[] buyPrices = new int[MarketSnapshot.DEPTH];
+        private final int[] buyVolumes = new int[MarketSnapshot.DEPTH];
+        private final int[] sellPrices = new int[MarketSnapshot.DEPTH];
+        private final int[] sellVolumes = new int[MarketSnapshot.DEPTH];
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import net.azzerial.skhc.entities.Market;
+import net.azzerial.skhc.entities.Offer;
+
+import java.util.Arrays;
+
+public final class MarketSnapshot {
+
+    // the amount of offers listed on each side of the market
+    public static final int DEPTH = 5;
+
+    private final long version;
+    private final long receivedAt;
+    private final int lastPrice;
+    private final int[] buyPrices;
+    private final int[] buyVolumes;
+    private final int[] sellPrices;
+    private final int[] sellVolumes;
+    private final int bestBuyPrice;
+    private final int bestSellPrice;
+    private final MarketImageCache images;
+    private volatile MarketPayloads payloads;
+
+    /* Constructors */
+
+    public MarketSnapshot(long version, long receivedAt, int lastPrice, int[] buyPrices, int[] buyVolumes, int[] sellPrices, int[] sellVolumes) {
+        this(version, receivedAt, lastPrice, buyPrices, buyVolumes, sellPrices, sellVolumes, null);
+    }
+
+    // the images are rendered with the renderer of the market, or their own one when null
+    MarketSnapshot(long version, long receivedAt, int lastPrice, int[] buyPrices, int[] buyVolumes, int[] sellPrices, int[] sellVolumes, MarketRenderer renderer) {
+        this.version = version;
+        this.receivedAt = receivedAt;
+        this.lastPrice = lastPrice;
+        this.buyPrices = Arrays.copyOf(buyPrices, DEPTH);
+        this.buyVolumes = Arrays.copyOf(buyVolumes, DEPTH);
+        this.sellPrices = Arrays.copyOf(sellPrices, DEPTH);
+        this.sellVolumes = Arrays.copyOf(sellVolumes, DEPTH);
+        this.bestBuyPrice = bestBuyPrice(this.buyPrices);
+        this.bestSellPrice = bestSellPrice(this.sellPrices);
+        this.images = new MarketImageCache(this, renderer);
+    }
+
+    public static MarketSnapshot of(long version, long receivedAt, Market market) {
+        final int[] buyPrices = new int[DEPTH];
+        final int[] buyVolumes = new int[DEPTH];
+        final int[] sellPrices = new int[DEPTH];
+        final int[] sellVolumes = new int[DEPTH];
+
+        copy(market.buyOffers, buyPrices, buyVolumes);
+        copy(market.sellOffers, sellPrices, sellVolumes);
+        return new MarketSnapshot(version, receivedAt, market.lastPrice, buyPrices, buyVolumes, sellPrices, sellVolumes);
+    }
+
+    /* Getters */
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public int getLastPrice() {
+        return lastPrice;
+    }
+
+    public int getBuyPrice(int index) {
+        return buyPrices[index];
+    }
+
+    public int getBuyVolume(int index) {
+        return buyVolumes[index];
+    }
+
+    public int getSellPrice(int index) {
+        return sellPrices[index];
+    }
+
+    public int getSellVolume(int index) {
+        return sellVolumes[index];
+    }
+
+    // the highest buy price across the levels, 0 when there is no buy offer
+    public int getBestBuyPrice() {
+        return bestBuyPrice;
+    }
+
+    // the lowest sell price across the levels, 0 when there is no sell offer
+    public int getBestSellPrice() {
+        return bestSellPrice;
+    }
+
+    public MarketImageCache getImages() {
+        return images;
+    }
+
+    public MarketPayloads getPayloads() {
+        MarketPayloads payloads = this.payloads;
+
+        // racing threads may both serialize, they produce identical payloads
+        if (payloads == null) {
+            payloads = MarketPayloads.of(this);
+            this.payloads = payloads;
+        }
+        return payloads;
+    }
+
+    /* Internal */
+
+    // util
+
+    public static int bestBuyPrice(int[] prices) {
+        return best(prices, true);
+    }
+
+    public static int bestSellPrice(int[] prices) {
+        return best(prices, false);
+    }
+
+    private static int best(int[] prices, boolean highest) {
+        int best = 0;
+
+        for (int price : prices) {
+            // empty offers are listed with a zero price
+            if (price > 0 && (best == 0 || (highest ? price > best : price < best))) {
+                best = price;
+            }
+        }
+        return best;
+    }
+
+    private static void copy(Offer[] offers, int[] prices, int[] volumes) {
+        if (offers == null) {
+            return;
+        }
+        for (int i = 0; i != Math.min(offers.length, DEPTH); i++) {
+            if (offers[i] != null) {
+                prices[i] = offers[i].price;
+                volumes[i] = offers[i].volume;
+            }
+        }
+    }
+}
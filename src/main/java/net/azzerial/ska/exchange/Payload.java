@@ -0,0 +1,191 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public final class Payload {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // the payloads are compressed once and served many times, favor the ratio over the speed
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+    // below this size, the gzip header and trailer outweigh the savings
+    private static final int MIN_COMPRESSED_SIZE = 128;
+    private static final byte[] NOT_COMPRESSED = new byte[0];
+
+    private final byte[] bytes;
+    private final String contentType;
+    private final String etag;
+    private final boolean compressible;
+    private volatile byte[] gzipped;
+
+    /* Constructors */
+
+    private Payload(byte[] bytes, String contentType, String etag) {
+        this.bytes = bytes;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.compressible = bytes.length >= MIN_COMPRESSED_SIZE && isCompressible(contentType);
+    }
+
+    public static Payload of(byte[] bytes, String contentType) {
+        return new Payload(bytes, contentType, etag(bytes));
+    }
+
+    /* Getters */
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    public byte[] getGzipped() {
+        byte[] gzipped = this.gzipped;
+
+        // compressed on first use, once per payload
+        if (gzipped == null) {
+            gzipped = compressible ? gzip(bytes) : NOT_COMPRESSED;
+            if (gzipped.length >= bytes.length) {
+                gzipped = NOT_COMPRESSED;
+            }
+            this.gzipped = gzipped;
+        }
+        return gzipped == NOT_COMPRESSED ? null : gzipped;
+    }
+
+    /* Methods */
+
+    public void serve(Context ctx) {
+        final byte[] gzipped = compressible && acceptsGzip(ctx.header(Header.ACCEPT_ENCODING)) ? getGzipped() : null;
+        final String gzipEtag = gzipEtag();
+
+        // the representation depends on the Accept-Encoding header
+        if (compressible) {
+            vary(ctx, Header.ACCEPT_ENCODING);
+        }
+        ctx.header(Header.ETAG, gzipped != null ? gzipEtag : etag);
+
+        // the client already holds this exact content, whatever its encoding
+        if (matches(ctx.header(Header.IF_NONE_MATCH), gzipEtag)) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return;
+        }
+        ctx.contentType(contentType);
+        if (gzipped != null) {
+            ctx.header(Header.CONTENT_ENCODING, "gzip");
+            ctx.header(Header.CONTENT_LENGTH, Integer.toString(gzipped.length));
+            ctx.result(gzipped);
+        } else {
+            ctx.header(Header.CONTENT_LENGTH, Integer.toString(bytes.length));
+            ctx.result(bytes);
+        }
+    }
+
+    public static void vary(Context ctx, String header) {
+        final String vary = ctx.res().getHeader(Header.VARY);
+
+        // keep the request headers listed by the routes
+        ctx.header(Header.VARY, vary == null ? header : vary + ", " + header);
+    }
+
+    /* Internal */
+
+    private String gzipEtag() {
+        // strong etags must differ between the encodings of a representation
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    private boolean matches(String ifNoneMatch, String gzipEtag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+
+            // If-None-Match uses the weak comparison function
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/")
+            || contentType.startsWith("application/json")
+            || contentType.startsWith("image/svg+xml");
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        final double gzip = AcceptHeader.quality(acceptEncoding, "gzip");
+
+        // an explicit 'gzip' entry takes precedence over the wildcard, 'q=0' refusing the coding
+        return (gzip >= 0 ? gzip : AcceptHeader.quality(acceptEncoding, "*")) > 0;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{ def.setLevel(COMPRESSION_LEVEL); }}) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String etag(byte[] bytes) {
+        final byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // the first 64 bits are plenty to identify a representation
+        final char[] chars = new char[18];
+
+        chars[0] = '"';
+        for (int i = 0; i != 8; i++) {
+            chars[1 + (i * 2)] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            chars[2 + (i * 2)] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        chars[17] = '"';
+        return new String(chars);
+    }
+}
@@ -0,0 +1,639 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public final class PngEncoder {
+
+    // an 8-bit palette image, quantized when the image has more than 256 colors
+    public static final PngEncoder INDEXED = new PngEncoder(true, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    // a lossless 8-bit RGB image
+    public static final PngEncoder TRUECOLOR = new PngEncoder(false, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    // filter types
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+    private static final int FILTERS = 5;
+    // the maximum size of an IDAT chunk
+    private static final int CHUNK_SIZE = 1 << 16;
+    // the zlib header of the stitched images, deflate with a 32K window and the default level
+    private static final byte[] ZLIB_HEADER = { 0x78, (byte) 0x9C };
+    private static final int ADLER_BASE = 65521;
+
+    private final boolean indexed;
+    private final ThreadLocal<Deflater> deflaters;
+    // raw deflate streams, for the images stitched from separately encoded rows
+    private final ThreadLocal<Deflater> rawDeflaters;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    /* Constructors */
+
+    public PngEncoder(boolean indexed, int level, int strategy) {
+        this.indexed = indexed;
+        this.deflaters = ThreadLocal.withInitial(() -> deflater(level, strategy, false));
+        this.rawDeflaters = ThreadLocal.withInitial(() -> deflater(level, strategy, true));
+    }
+
+    /* Methods */
+
+    public byte[] encode(BufferedImage image) {
+        // flat images compress to a small fraction of their raw size
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 16);
+
+        try {
+            encode(image, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public void encode(BufferedImage image, OutputStream out) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = pixels(image);
+        final Buffers buffers = this.buffers.get();
+        final Deflater deflater = deflaters.get();
+        final Palette palette = indexed ? Palette.of(pixels) : null;
+
+        out.write(SIGNATURE);
+        writeHeader(out, buffers, width, height, indexed);
+        if (palette != null) {
+            writePalette(out, buffers, palette);
+        }
+
+        // filter and compress the rows, one at a time
+        deflater.reset();
+        buffers.chunkLength = 0;
+        writeRows(out, buffers, deflater, null, pixels, width, 0, height, palette, null);
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(out, buffers, deflater, Deflater.NO_FLUSH);
+        }
+        if (buffers.chunkLength != 0) {
+            writeChunk(out, buffers, "IDAT", buffers.chunk, buffers.chunkLength);
+        }
+        writeChunk(out, buffers, "IEND", buffers.chunk, 0);
+    }
+
+    public Body encodeBody(BufferedImage image, int rows) {
+        final int width = image.getWidth();
+        final int[] pixels = pixels(image);
+        final Buffers buffers = this.buffers.get();
+        final Deflater deflater = rawDeflaters.get();
+        final Palette palette = indexed ? Palette.of(pixels) : null;
+        final Adler32 adler = new Adler32();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(width * rows / 16);
+
+        try {
+            out.write(SIGNATURE);
+            writeHeader(out, buffers, width, image.getHeight(), indexed);
+            if (palette != null) {
+                writePalette(out, buffers, palette);
+            }
+
+            // the zlib stream is left open, flushed to a byte boundary for the footer rows to follow
+            deflater.reset();
+            System.arraycopy(ZLIB_HEADER, 0, buffers.chunk, 0, ZLIB_HEADER.length);
+            buffers.chunkLength = ZLIB_HEADER.length;
+
+            final byte[] lastRow = writeRows(out, buffers, deflater, adler, pixels, width, 0, rows, palette, null);
+
+            boolean pending;
+
+            do {
+                pending = deflate(out, buffers, deflater, Deflater.SYNC_FLUSH);
+            } while (pending);
+            if (buffers.chunkLength != 0) {
+                writeChunk(out, buffers, "IDAT", buffers.chunk, buffers.chunkLength);
+            }
+            return new Body(
+                out.toByteArray(),
+                palette,
+                Arrays.copyOf(lastRow, width * (indexed ? 1 : 3)),
+                width,
+                rows,
+                image.getHeight(),
+                adler.getValue()
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public byte[] encodeFooter(Body body, BufferedImage footer) {
+        if (footer.getWidth() != body.width || footer.getHeight() != body.height - body.rows) {
+            throw new IllegalArgumentException("The footer doesn't complete the body");
+        }
+
+        final int[] pixels = pixels(footer);
+        final Buffers buffers = this.buffers.get();
+        final Deflater deflater = rawDeflaters.get();
+        final Adler32 adler = new Adler32();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(body.bytes.length + (body.width * footer.getHeight() / 16));
+
+        try {
+            out.write(body.bytes);
+
+            // a separate deflate stream, completing the one of the body
+            deflater.reset();
+            buffers.chunkLength = 0;
+            writeRows(out, buffers, deflater, adler, pixels, body.width, 0, footer.getHeight(), body.palette, body.lastRow);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(out, buffers, deflater, Deflater.NO_FLUSH);
+            }
+
+            // the zlib trailer covers both the body and the footer rows
+            final long length = (long) footer.getHeight() * (body.lastRow.length + 1);
+            final long checksum = combineAdler(body.adler, adler.getValue(), length);
+
+            if (buffers.chunkLength + 4 > CHUNK_SIZE) {
+                writeChunk(out, buffers, "IDAT", buffers.chunk, buffers.chunkLength);
+                buffers.chunkLength = 0;
+            }
+            putInt(buffers.chunk, buffers.chunkLength, (int) checksum);
+            buffers.chunkLength += 4;
+            writeChunk(out, buffers, "IDAT", buffers.chunk, buffers.chunkLength);
+            writeChunk(out, buffers, "IEND", buffers.chunk, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /* Internal */
+
+    private static Deflater deflater(int level, int strategy, boolean raw) {
+        final Deflater deflater = new Deflater(level, raw);
+
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    private static byte[] writeRows(
+        OutputStream out,
+        Buffers buffers,
+        Deflater deflater,
+        Adler32 adler,
+        int[] pixels,
+        int width,
+        int from,
+        int to,
+        Palette palette,
+        byte[] previousRow
+    ) throws IOException {
+        final int bytesPerPixel = palette != null ? 1 : 3;
+        final int stride = width * bytesPerPixel;
+        byte[] previous = buffers.row(0, stride);
+        byte[] current = buffers.row(1, stride);
+        boolean first = previousRow == null;
+
+        // the rows following an encoded part are filtered against its last row
+        if (first) {
+            Arrays.fill(previous, (byte) 0);
+        } else {
+            System.arraycopy(previousRow, 0, previous, 0, stride);
+        }
+        for (int y = from; y != to; y++) {
+            if (palette != null) {
+                palette.index(pixels, y * width, width, current);
+            } else {
+                rgb(pixels, y * width, width, current);
+            }
+
+            final byte[] filtered = filter(buffers, current, previous, stride, bytesPerPixel, first);
+
+            if (adler != null) {
+                adler.update(filtered, 0, stride + 1);
+            }
+            deflater.setInput(filtered, 0, stride + 1);
+            while (!deflater.needsInput()) {
+                deflate(out, buffers, deflater, Deflater.NO_FLUSH);
+            }
+
+            final byte[] swap = previous;
+
+            previous = current;
+            current = swap;
+            first = false;
+        }
+        return previous;
+    }
+
+    private static long combineAdler(long adler1, long adler2, long length2) {
+        // see adler32_combine in zlib
+        final long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        // read the raster directly when possible, avoiding a full copy
+        if (image.getType() == BufferedImage.TYPE_INT_RGB && image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static void rgb(int[] pixels, int offset, int width, byte[] row) {
+        for (int x = 0, i = 0; x != width; x++) {
+            final int pixel = pixels[offset + x];
+
+            row[i++] = (byte) (pixel >> 16);
+            row[i++] = (byte) (pixel >> 8);
+            row[i++] = (byte) pixel;
+        }
+    }
+
+    private static byte[] filter(Buffers buffers, byte[] row, byte[] previous, int stride, int bpp, boolean first) {
+        byte[] best = null;
+        long bestScore = Long.MAX_VALUE;
+
+        // pick the filter minimizing the sum of absolute differences, as advised by the PNG specification
+        for (int type = 0; type != FILTERS; type++) {
+            // without a previous row, Up and Paeth degrade to None and Sub
+            if (first && (type == FILTER_UP || type == FILTER_PAETH)) {
+                continue;
+            }
+
+            final byte[] out = buffers.filtered(type, stride + 1);
+            long score = 0;
+
+            out[0] = (byte) type;
+            for (int i = 0; i != stride; i++) {
+                final int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                final int b = previous[i] & 0xFF;
+                final int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                final int x = row[i] & 0xFF;
+                final int value;
+
+                switch (type) {
+                    case FILTER_SUB:
+                        value = x - a;
+                        break;
+                    case FILTER_UP:
+                        value = x - b;
+                        break;
+                    case FILTER_AVERAGE:
+                        value = x - ((a + b) >>> 1);
+                        break;
+                    case FILTER_PAETH:
+                        value = x - paeth(a, b, c);
+                        break;
+                    default:
+                        value = x;
+                        break;
+                }
+                out[i + 1] = (byte) value;
+                score += Math.abs((byte) value);
+                if (score >= bestScore) {
+                    break;
+                }
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                best = out;
+            }
+        }
+        return best;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static boolean deflate(OutputStream out, Buffers buffers, Deflater deflater, int flush) throws IOException {
+        final int available = CHUNK_SIZE - buffers.chunkLength;
+        final int length = deflater.deflate(buffers.chunk, buffers.chunkLength, available, flush);
+
+        buffers.chunkLength += length;
+        if (buffers.chunkLength == CHUNK_SIZE) {
+            writeChunk(out, buffers, "IDAT", buffers.chunk, CHUNK_SIZE);
+            buffers.chunkLength = 0;
+        }
+        // a filled chunk may leave flushed output pending
+        return length == available;
+    }
+
+    private static void writeHeader(OutputStream out, Buffers buffers, int width, int height, boolean indexed) throws IOException {
+        final byte[] header = new byte[13];
+
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = (byte) (indexed ? 3 : 2); // color type, palette or rgb
+        header[10] = 0; // compression method
+        header[11] = 0; // filter method
+        header[12] = 0; // interlace method
+        writeChunk(out, buffers, "IHDR", header, header.length);
+    }
+
+    private static void writePalette(OutputStream out, Buffers buffers, Palette palette) throws IOException {
+        final byte[] entries = new byte[palette.size * 3];
+
+        for (int i = 0; i != palette.size; i++) {
+            entries[i * 3] = (byte) (palette.colors[i] >> 16);
+            entries[(i * 3) + 1] = (byte) (palette.colors[i] >> 8);
+            entries[(i * 3) + 2] = (byte) palette.colors[i];
+        }
+        writeChunk(out, buffers, "PLTE", entries, entries.length);
+    }
+
+    private static void writeChunk(OutputStream out, Buffers buffers, String type, byte[] data, int length) throws IOException {
+        final byte[] bytes = buffers.header;
+        final CRC32 crc = buffers.crc;
+
+        putInt(bytes, 0, length);
+        System.arraycopy(type.getBytes(StandardCharsets.US_ASCII), 0, bytes, 4, 4);
+        out.write(bytes, 0, 8);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(bytes, 4, 4);
+        crc.update(data, 0, length);
+        putInt(bytes, 0, (int) crc.getValue());
+        out.write(bytes, 0, 4);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    public static final class Body {
+
+        private final byte[] bytes;
+        private final Palette palette;
+        private final byte[] lastRow;
+        private final int width;
+        private final int rows;
+        private final int height;
+        private final long adler;
+
+        /* Constructors */
+
+        private Body(byte[] bytes, Palette palette, byte[] lastRow, int width, int rows, int height, long adler) {
+            this.bytes = bytes;
+            this.palette = palette;
+            this.lastRow = lastRow;
+            this.width = width;
+            this.rows = rows;
+            this.height = height;
+            this.adler = adler;
+        }
+    }
+
+    private static final class Buffers {
+
+        private final byte[] header = new byte[8];
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private final CRC32 crc = new CRC32();
+        private final byte[][] rows = new byte[2][];
+        private final byte[][] filtered = new byte[FILTERS][];
+        private int chunkLength;
+
+        /* Methods */
+
+        private byte[] row(int index, int length) {
+            if (rows[index] == null || rows[index].length < length) {
+                rows[index] = new byte[length];
+            }
+            return rows[index];
+        }
+
+        private byte[] filtered(int type, int length) {
+            if (filtered[type] == null || filtered[type].length < length) {
+                filtered[type] = new byte[length];
+            }
+            return filtered[type];
+        }
+    }
+
+    private static final class Palette {
+
+        // the maximum amount of colors of an 8-bit palette
+        private static final int MAX_COLORS = 256;
+
+        private final int[] colors;
+        private final int size;
+        private final ColorMap indices;
+
+        /* Constructors */
+
+        private Palette(int[] colors, int size, ColorMap indices) {
+            this.colors = colors;
+            this.size = size;
+            this.indices = indices;
+        }
+
+        private static Palette of(int[] pixels) {
+            // count the occurrences of each color
+            final ColorMap counts = new ColorMap(1024);
+
+            for (int pixel : pixels) {
+                counts.increment(pixel & 0xFFFFFF);
+            }
+
+            // keep the most frequent colors, the rare ones are antialiasing shades
+            final long[] entries = new long[counts.size];
+            int count = 0;
+
+            for (int i = 0; i != counts.keys.length; i++) {
+                if (counts.used[i]) {
+                    entries[count++] = ((long) counts.values[i] << 32) | counts.keys[i];
+                }
+            }
+            Arrays.sort(entries);
+
+            final int size = Math.min(count, MAX_COLORS);
+            final int[] colors = new int[size];
+            final ColorMap indices = new ColorMap(count * 2);
+
+            for (int i = 0; i != size; i++) {
+                colors[i] = (int) entries[count - 1 - i];
+                indices.put(colors[i], i);
+            }
+
+            // map the remaining colors to their nearest palette entry
+            for (int i = 0; i < count - size; i++) {
+                final int color = (int) entries[i];
+
+                indices.put(color, nearest(colors, color));
+            }
+            return new Palette(colors, size, indices);
+        }
+
+        private void index(int[] pixels, int offset, int width, byte[] row) {
+            for (int x = 0; x != width; x++) {
+                final int color = pixels[offset + x] & 0xFFFFFF;
+                final int index = indices.get(color, -1);
+
+                // the footers are indexed with the palette of their body, which may lack some shades
+                row[x] = (byte) (index != -1 ? index : nearest(colors, color));
+            }
+        }
+
+        private static int nearest(int[] colors, int color) {
+            final int r = (color >> 16) & 0xFF;
+            final int g = (color >> 8) & 0xFF;
+            final int b = color & 0xFF;
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+
+            for (int i = 0; i != colors.length; i++) {
+                final int dr = ((colors[i] >> 16) & 0xFF) - r;
+                final int dg = ((colors[i] >> 8) & 0xFF) - g;
+                final int db = (colors[i] & 0xFF) - b;
+                final int distance = (dr * dr * 2) + (dg * dg * 4) + (db * db * 3);
+
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static final class ColorMap {
+
+        // an open addressing map from 24-bit colors to ints
+        private int[] keys;
+        private int[] values;
+        private boolean[] used;
+        private int size;
+
+        /* Constructors */
+
+        private ColorMap(int expected) {
+            final int capacity = Integer.highestOneBit(Math.max(16, expected) * 2 - 1) << 1;
+
+            this.keys = new int[capacity];
+            this.values = new int[capacity];
+            this.used = new boolean[capacity];
+        }
+
+        /* Methods */
+
+        private void increment(int key) {
+            final int slot = slot(key);
+
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                if (++size * 2 > keys.length) {
+                    values[slot] = 1;
+                    grow();
+                    return;
+                }
+            }
+            values[slot]++;
+        }
+
+        private void put(int key, int value) {
+            final int slot = slot(key);
+
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+                return;
+            }
+            values[slot] = value;
+        }
+
+        private int get(int key, int missing) {
+            final int slot = slot(key);
+
+            return used[slot] ? values[slot] : missing;
+        }
+
+        private int slot(int key) {
+            final int mask = keys.length - 1;
+            final int hash = key * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            final int[] oldKeys = keys;
+            final int[] oldValues = values;
+            final boolean[] oldUsed = used;
+
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int i = 0; i != oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    final int slot = slot(oldKeys[i]);
+
+                    used[slot] = true;
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
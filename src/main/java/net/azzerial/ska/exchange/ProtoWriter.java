@@ -0,0 +1,75 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange;
+
+import java.util.Arrays;
+
+final class ProtoWriter {
+
+    // wire types
+    private static final int VARINT = 0;
+    private static final int LENGTH_DELIMITED = 2;
+
+    private byte[] buffer = new byte[64];
+    private int length = 0;
+
+    /* Methods */
+
+    ProtoWriter writeInt32(int field, int value) {
+        // proto3 leaves the default values out
+        if (value != 0) {
+            writeTag(field, VARINT);
+            // negative values are sign extended to 64 bits
+            writeVarint(value);
+        }
+        return this;
+    }
+
+    ProtoWriter writeMessage(int field, ProtoWriter message) {
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(message.length);
+        ensureCapacity(message.length);
+        System.arraycopy(message.buffer, 0, buffer, length, message.length);
+        length += message.length;
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /* Internal */
+
+    private void writeTag(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
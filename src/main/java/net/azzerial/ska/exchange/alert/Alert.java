@@ -0,0 +1,291 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange.alert;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.azzerial.ska.exchange.MarketSnapshot;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.function.ToIntFunction;
+
+public final class Alert {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper(JSON_FACTORY);
+    // the webhook hosts exempted from the public address check, such as a local stub when load testing
+    private static final Set<String> ALLOWED_HOSTS = Arrays.stream(System.getenv().getOrDefault("SPIRAL_KNIGHTS_WEBHOOK_ALLOWED_HOSTS", "").split(","))
+        .map(host -> host.trim().toLowerCase(Locale.ROOT))
+        .filter(host -> !host.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+
+    private final String id;
+    private final Field field;
+    private final Direction direction;
+    private final int threshold;
+    private final URI webhook;
+    private final long createdAt;
+
+    /* Constructors */
+
+    public Alert(Field field, Direction direction, int threshold, URI webhook) {
+        this.id = UUID.randomUUID().toString();
+        this.field = field;
+        this.direction = direction;
+        this.threshold = threshold;
+        this.webhook = webhook;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public static Alert parse(byte[] body) {
+        final JsonNode node;
+
+        try {
+            node = JSON_MAPPER.readTree(body);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid alert, expected a json object");
+        }
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Invalid alert, expected a json object");
+        }
+
+        final Field field = Field.fromName(node.path("field").asText(null));
+        final Direction direction = Direction.fromName(node.path("direction").asText(null));
+        final JsonNode threshold = node.path("threshold");
+
+        if (field == null) {
+            throw new IllegalArgumentException("Invalid 'field', expected one of lastPrice, bestBuyPrice, bestSellPrice");
+        }
+        if (direction == null) {
+            throw new IllegalArgumentException("Invalid 'direction', expected one of above, below");
+        }
+        if (!threshold.canConvertToInt() || !threshold.isIntegralNumber() || threshold.intValue() <= 0) {
+            throw new IllegalArgumentException("Invalid 'threshold', expected a positive integer price");
+        }
+        return new Alert(field, direction, threshold.intValue(), webhook(node.path("webhook").asText(null)));
+    }
+
+    /* Getters */
+
+    public String getId() {
+        return id;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public URI getWebhook() {
+        return webhook;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /* Methods */
+
+    public byte[] toJson() {
+        return json(null);
+    }
+
+    // the notification sent to the webhook once the alert triggered
+    byte[] toNotification(MarketSnapshot snapshot) {
+        return json(snapshot);
+    }
+
+    /* Internal */
+
+    private byte[] json(MarketSnapshot snapshot) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("id", id);
+            generator.writeStringField("field", field.name);
+            generator.writeStringField("direction", direction.name);
+            generator.writeNumberField("threshold", threshold);
+            generator.writeStringField("webhook", webhook.toString());
+            generator.writeNumberField("createdAt", createdAt);
+            if (snapshot != null) {
+                generator.writeNumberField("value", field.get(snapshot));
+                generator.writeNumberField("version", snapshot.getVersion());
+                generator.writeNumberField("receivedAt", snapshot.getReceivedAt());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize the alert", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static URI webhook(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Invalid 'webhook', expected an http or https url");
+        }
+        try {
+            final URI uri = new URI(value);
+            final String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+
+            if ((scheme.equals("http") || scheme.equals("https")) && uri.getHost() != null) {
+                // anyone can register an alert, don't let them make the server call its own network
+                if (!isPublic(uri.getHost())) {
+                    throw new IllegalArgumentException("Invalid 'webhook', the host must resolve to public addresses");
+                }
+                return uri;
+            }
+        } catch (URISyntaxException ignored) {}
+        throw new IllegalArgumentException("Invalid 'webhook', expected an http or https url");
+    }
+
+    // whether every address of the host is publicly routable, unresolvable hosts aren't
+    static boolean isPublic(String host) {
+        if (ALLOWED_HOSTS.contains(host.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        try {
+            for (InetAddress address : InetAddress.getAllByName(host)) {
+                if (!isPublic(address)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (UnknownHostException ignored) {
+            return false;
+        }
+    }
+
+    private static boolean isPublic(InetAddress address) {
+        if (address.isAnyLocalAddress()
+            || address.isLoopbackAddress()
+            || address.isLinkLocalAddress()
+            || address.isSiteLocalAddress()
+            || address.isMulticastAddress()) {
+            return false;
+        }
+
+        final byte[] bytes = address.getAddress();
+
+        // the carrier-grade nat range, 100.64.0.0/10
+        if (address instanceof Inet4Address) {
+            return !((bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64);
+        }
+        // the unique local range, fc00::/7
+        if (address instanceof Inet6Address) {
+            return (bytes[0] & 0xfe) != 0xfc;
+        }
+        return true;
+    }
+
+    public enum Field {
+
+        LAST_PRICE("lastPrice", MarketSnapshot::getLastPrice),
+        BEST_BUY_PRICE("bestBuyPrice", MarketSnapshot::getBestBuyPrice),
+        BEST_SELL_PRICE("bestSellPrice", MarketSnapshot::getBestSellPrice);
+
+        private final String name;
+        private final ToIntFunction<MarketSnapshot> getter;
+
+        /* Constructors */
+
+        Field(String name, ToIntFunction<MarketSnapshot> getter) {
+            this.name = name;
+            this.getter = getter;
+        }
+
+        /* Getters */
+
+        public String getName() {
+            return name;
+        }
+
+        /* Methods */
+
+        @Nullable
+        public static Field fromName(String name) {
+            for (Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        // the value of the field in the snapshot, 0 when undefined (no offers)
+        public int get(MarketSnapshot snapshot) {
+            return getter.applyAsInt(snapshot);
+        }
+    }
+
+    public enum Direction {
+
+        // triggers once the value is greater than or equal to the threshold
+        ABOVE("above"),
+        // triggers once the value is less than or equal to the threshold
+        BELOW("below");
+
+        private final String name;
+
+        /* Constructors */
+
+        Direction(String name) {
+            this.name = name;
+        }
+
+        /* Getters */
+
+        public String getName() {
+            return name;
+        }
+
+        /* Methods */
+
+        @Nullable
+        public static Direction fromName(String name) {
+            for (Direction direction : values()) {
+                if (direction.name.equals(name)) {
+                    return direction;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange.alert;
+
+import net.azzerial.ska.exchange.MarketConsumer;
+import net.azzerial.ska.exchange.MarketSnapshot;
+import net.azzerial.ska.metrics.Counter;
+import net.azzerial.ska.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+public final class MarketAlerts implements MarketConsumer {
+
+    // the maximum amount of pending alerts per market
+    public static final int MAX_ALERTS = 10_000;
+    // metrics
+    private static final Counter TRIGGERED = Metrics.counter("ska_alerts_triggered_total", "Alerts triggered by a market update.");
+    // shared by the markets of every region, the webhooks are limited as a whole
+    private static final WebhookDispatcher DISPATCHER = new WebhookDispatcher();
+
+    private final Map<String, Alert> alerts = new HashMap<>();
+    // the pending alerts sorted by threshold, per field and direction
+    private final Map<Alert.Field, NavigableMap<Integer, List<Alert>>> above = new EnumMap<>(Alert.Field.class);
+    private final Map<Alert.Field, NavigableMap<Integer, List<Alert>>> below = new EnumMap<>(Alert.Field.class);
+
+    /* Constructors */
+
+    public MarketAlerts() {
+        for (Alert.Field field : Alert.Field.values()) {
+            above.put(field, new TreeMap<>());
+            below.put(field, new TreeMap<>());
+        }
+    }
+
+    /* Getters */
+
+    public synchronized Alert get(String id) {
+        return alerts.get(id);
+    }
+
+    public synchronized int size() {
+        return alerts.size();
+    }
+
+    /* Methods */
+
+    public synchronized void register(Alert alert) {
+        if (alerts.size() >= MAX_ALERTS) {
+            throw new IllegalStateException("Too many alerts registered");
+        }
+        alerts.put(alert.getId(), alert);
+        index(alert).computeIfAbsent(alert.getThreshold(), threshold -> new ArrayList<>(1)).add(alert);
+    }
+
+    public synchronized boolean remove(String id) {
+        final Alert alert = alerts.remove(id);
+
+        if (alert == null) {
+            return false;
+        }
+
+        final NavigableMap<Integer, List<Alert>> index = index(alert);
+        final List<Alert> alerts = index.get(alert.getThreshold());
+
+        alerts.remove(alert);
+        if (alerts.isEmpty()) {
+            index.remove(alert.getThreshold());
+        }
+        return true;
+    }
+
+    @Override
+    public void onMarketSnapshot(@NotNull MarketSnapshot snapshot) {
+        final List<Alert> triggered = new ArrayList<>();
+
+        synchronized (this) {
+            if (alerts.isEmpty()) {
+                return;
+            }
+            for (Alert.Field field : Alert.Field.values()) {
+                final int value = field.get(snapshot);
+
+                // a missing offer triggers nothing
+                if (value <= 0) {
+                    continue;
+                }
+
+                // only walk the crossed thresholds, the others are never looked at
+                poll(above.get(field).headMap(value, true), triggered);
+                poll(below.get(field).tailMap(value, true), triggered);
+            }
+        }
+        if (triggered.isEmpty()) {
+            return;
+        }
+        TRIGGERED.add(triggered.size());
+
+        // one batch per webhook, the alerts triggered together are delivered together
+        final Map<URI, List<byte[]>> notifications = new LinkedHashMap<>();
+
+        for (Alert alert : triggered) {
+            notifications.computeIfAbsent(alert.getWebhook(), webhook -> new ArrayList<>()).add(alert.toNotification(snapshot));
+        }
+        notifications.forEach(DISPATCHER::dispatch);
+    }
+
+    /* Internal */
+
+    private NavigableMap<Integer, List<Alert>> index(Alert alert) {
+        return (alert.getDirection() == Alert.Direction.ABOVE ? above : below).get(alert.getField());
+    }
+
+    private void poll(NavigableMap<Integer, List<Alert>> crossed, List<Alert> triggered) {
+        // the alerts only trigger once
+        for (List<Alert> alerts : crossed.values()) {
+            for (Alert alert : alerts) {
+                this.alerts.remove(alert.getId());
+                triggered.add(alert);
+            }
+        }
+        crossed.clear();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange.alert;
+
+import net.azzerial.ska.metrics.Counter;
+import net.azzerial.ska.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class WebhookDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+    // the maximum amount of requests in flight per webhook, a slow target must not hog the client
+    private static final int MAX_IN_FLIGHT = 2;
+    // the maximum amount of notifications sent in a single request
+    private static final int MAX_BATCH_SIZE = 100;
+    // the maximum amount of notifications waiting per webhook, the oldest are dropped past it
+    private static final int MAX_PENDING = 1_000;
+    // delivery attempts per batch, retried with an exponential backoff starting at the base delay
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BASE_DELAY = 1_000;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    // metrics
+    private static final Counter DELIVERED = Metrics.counter("ska_webhook_notifications_total", "Alert notifications handled by the webhook dispatcher.", "outcome", "delivered");
+    private static final Counter FAILED = Metrics.counter("ska_webhook_notifications_total", "Alert notifications handled by the webhook dispatcher.", "outcome", "failed");
+    private static final Counter DROPPED = Metrics.counter("ska_webhook_notifications_total", "Alert notifications handled by the webhook dispatcher.", "outcome", "dropped");
+    private static final Counter RETRIES = Metrics.counter("ska_webhook_retries_total", "Webhook requests retried after a failed delivery.");
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .build();
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(new RetryThreadFactory());
+    private final Map<URI, Target> targets = new ConcurrentHashMap<>();
+
+    /* Constructors */
+
+    WebhookDispatcher() {
+        Metrics.gauge("ska_webhook_targets", "Webhooks with alert notifications pending or in flight.", targets::size);
+    }
+
+    /* Methods */
+
+    void dispatch(URI webhook, List<byte[]> notifications) {
+        Target target;
+
+        // an idle target is closed by its last request, a fresh one takes over
+        do {
+            target = targets.computeIfAbsent(webhook, Target::new);
+        } while (!target.offer(notifications));
+    }
+
+    /* Internal */
+
+    private static byte[] batch(List<byte[]> notifications) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // the notifications are already serialized, only join them into a json array
+        out.write('[');
+        for (int i = 0; i < notifications.size(); i++) {
+            if (i != 0) {
+                out.write(',');
+            }
+            out.writeBytes(notifications.get(i));
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    private final class Target {
+
+        private final URI webhook;
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        private int inFlight;
+        private boolean closed;
+
+        /* Constructors */
+
+        private Target(URI webhook) {
+            this.webhook = webhook;
+        }
+
+        /* Methods */
+
+        private boolean offer(List<byte[]> notifications) {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                for (byte[] notification : notifications) {
+                    // drop the oldest notification rather than growing without bounds
+                    if (queue.size() == MAX_PENDING) {
+                        queue.pollFirst();
+                        DROPPED.increment();
+                    }
+                    queue.addLast(notification);
+                }
+            }
+            drain();
+            return true;
+        }
+
+        private void drain() {
+            while (true) {
+                final List<byte[]> batch;
+
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        // forget the idle webhooks, the alerts may never target them again
+                        if (inFlight == 0) {
+                            closed = true;
+                            targets.remove(webhook, this);
+                        }
+                        return;
+                    }
+                    if (inFlight == MAX_IN_FLIGHT) {
+                        return;
+                    }
+                    // everything queued while the previous requests were in flight leaves together
+                    batch = new ArrayList<>(Math.min(queue.size(), MAX_BATCH_SIZE));
+                    while (batch.size() < MAX_BATCH_SIZE && !queue.isEmpty()) {
+                        batch.add(queue.pollFirst());
+                    }
+                    inFlight++;
+                }
+                // the host may resolve differently than when the alerts were registered
+                if (!Alert.isPublic(webhook.getHost())) {
+                    log.warn("Dropped {} alert notifications to {}, the host no longer resolves to public addresses", batch.size(), webhook);
+                    FAILED.add(batch.size());
+                    synchronized (this) {
+                        inFlight--;
+                    }
+                    continue;
+                }
+                send(batch(batch), batch.size(), 1);
+            }
+        }
+
+        private void send(byte[] body, int count, int attempt) {
+            final HttpRequest request = HttpRequest.newBuilder(webhook)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error == null && response.statusCode() / 100 == 2) {
+                    DELIVERED.add(count);
+                    complete();
+                    return;
+                }
+
+                // the client errors won't go away by themselves, only retry the transient ones
+                final boolean retryable = error != null || isRetryable(response.statusCode());
+                final String reason = error != null ? error.toString() : "status " + response.statusCode();
+
+                if (retryable && attempt < MAX_ATTEMPTS) {
+                    // the batch keeps its slot while waiting, backing off a failing webhook as a whole
+                    final long delay = RETRY_BASE_DELAY << (attempt - 1);
+
+                    log.debug("Failed to deliver {} alert notifications to {} ({}), retrying in {} ms", count, webhook, reason, delay);
+                    RETRIES.increment();
+                    retries.schedule(() -> send(body, count, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                log.warn("Failed to deliver {} alert notifications to {} after {} attempts ({})", count, webhook, attempt, reason);
+                FAILED.add(count);
+                complete();
+            });
+        }
+
+        private void complete() {
+            synchronized (this) {
+                inFlight--;
+            }
+            drain();
+        }
+    }
+
+    private static final class RetryThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        /* Methods */
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "webhook-retry-" + count.incrementAndGet());
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange.history;
+
+import net.azzerial.ska.exchange.MarketConsumer;
+import net.azzerial.ska.exchange.MarketSnapshot;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public final class HistoryLog implements MarketConsumer, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryLog.class);
+
+    // version, received at, last price, buy & sell offers (price, volume), crc
+    public static final int RECORD_SIZE = 8 + 8 + 4 + (MarketSnapshot.DEPTH * 4 * 4) + 4;
+    private static final int BUY_OFFERS_OFFSET = 20;
+    private static final int SELL_OFFERS_OFFSET = BUY_OFFERS_OFFSET + (MarketSnapshot.DEPTH * 8);
+    // the amount of records per segment file, ~6.8 MB
+    private static final int SEGMENT_RECORDS = 1 << 16;
+    // the amount of records or time after which the appended records are synced to disk
+    private static final int SYNC_RECORDS = 64;
+    private static final long SYNC_INTERVAL = 1_000;
+    // syncs the records left behind once the updates stop coming, shared by the logs
+    private static final ScheduledExecutorService SYNCS = Executors.newSingleThreadScheduledExecutor(new SyncThreadFactory());
+    // segment files naming
+    private static final String SEGMENT_PREFIX = "market-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledFuture<?> syncTask;
+    private FileChannel channel;
+    private long segment;
+    private int segmentRecords;
+    private int unsyncedRecords;
+    private long lastSync;
+
+    /* Constructors */
+
+    public HistoryLog(Path directory) {
+        this.directory = directory;
+        this.syncTask = SYNCS.scheduleWithFixedDelay(this::syncIfStale, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /* Methods */
+
+    public synchronized MarketSnapshot replay(MarketHistory history) throws IOException {
+        Files.createDirectories(directory);
+
+        final List<Path> segments = listSegments(directory);
+        final long start = System.nanoTime();
+
+        // only the most recent segments are needed to fill the history
+        int first = segments.size();
+        long records = 0;
+
+        while (first != 0 && records < history.getCapacity()) {
+            first--;
+            records += Files.size(segments.get(first)) / RECORD_SIZE;
+        }
+
+        final CRC32 crc = new CRC32();
+        final int[] buyPrices = new int[MarketSnapshot.DEPTH];
+        final int[] sellPrices = new int[MarketSnapshot.DEPTH];
+        long replayed = 0;
+        int validRecords = 0;
+        Path lastSegment = null;
+        long lastPosition = -1;
+
+        for (int i = first; i != segments.size(); i++) {
+            try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                final int limit = mapped.limit();
+
+                validRecords = 0;
+                for (int position = 0; position + RECORD_SIZE <= limit; position += RECORD_SIZE) {
+                    crc.reset();
+                    mapped.limit(position + RECORD_SIZE - 4).position(position);
+                    crc.update(mapped);
+                    mapped.limit(limit);
+                    if ((int) crc.getValue() != mapped.getInt(position + RECORD_SIZE - 4)) {
+                        // a torn write, everything after it is unreliable
+                        log.warn("Corrupted record in {} at offset {}, ignoring the rest of the segment", segments.get(i).getFileName(), position);
+                        break;
+                    }
+                    prices(mapped, position + BUY_OFFERS_OFFSET, buyPrices);
+                    prices(mapped, position + SELL_OFFERS_OFFSET, sellPrices);
+                    history.append(
+                        mapped.getLong(position + 8),
+                        mapped.getInt(position + 16),
+                        MarketSnapshot.bestBuyPrice(buyPrices),
+                        MarketSnapshot.bestSellPrice(sellPrices),
+                        depth(mapped, position + BUY_OFFERS_OFFSET),
+                        depth(mapped, position + SELL_OFFERS_OFFSET)
+                    );
+                    lastSegment = segments.get(i);
+                    lastPosition = position;
+                    validRecords++;
+                    replayed++;
+                }
+            }
+        }
+
+        // the last valid record becomes the restored snapshot
+        MarketSnapshot last = null;
+
+        if (lastSegment != null) {
+            try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.READ)) {
+                last = readSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, lastPosition, RECORD_SIZE));
+            }
+        }
+        log.info("Replayed {} market records from {} segments in {} ms", replayed, segments.size() - first, (System.nanoTime() - start) / 1_000_000);
+
+        // resume appending to the last segment, after its last valid record
+        openSegment(segments.isEmpty() ? 0 : segmentIndex(segments.get(segments.size() - 1)), validRecords);
+        return last;
+    }
+
+    // reads the valid records of the segments, oldest first, without opening the log for appending
+    public static long read(Path directory, MarketConsumer consumer) throws IOException {
+        final CRC32 crc = new CRC32();
+        long records = 0;
+
+        for (Path segment : listSegments(directory)) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                final int limit = mapped.limit();
+
+                for (int position = 0; position + RECORD_SIZE <= limit; position += RECORD_SIZE) {
+                    crc.reset();
+                    mapped.limit(position + RECORD_SIZE - 4).position(position);
+                    crc.update(mapped);
+                    mapped.limit(limit);
+                    if ((int) crc.getValue() != mapped.getInt(position + RECORD_SIZE - 4)) {
+                        // a torn write, everything after it is unreliable
+                        break;
+                    }
+                    mapped.position(position);
+                    consumer.onMarketSnapshot(readSnapshot(mapped));
+                    records++;
+                }
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public void onMarketSnapshot(@NotNull MarketSnapshot snapshot) {
+        try {
+            append(snapshot);
+        } catch (IOException e) {
+            log.error("Failed to persist market snapshot #{}", snapshot.getVersion(), e);
+        }
+    }
+
+    @Override
+    public boolean isDurable() {
+        // a slow disk must not punch holes in the log
+        return true;
+    }
+
+    public synchronized void append(MarketSnapshot snapshot) throws IOException {
+        if (channel == null) {
+            openSegment(0, 0);
+        }
+        if (segmentRecords == SEGMENT_RECORDS) {
+            sync();
+            channel.close();
+            openSegment(segment + 1, 0);
+        }
+
+        buffer.clear();
+        buffer.putLong(snapshot.getVersion());
+        buffer.putLong(snapshot.getReceivedAt());
+        buffer.putInt(snapshot.getLastPrice());
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            buffer.putInt(snapshot.getBuyPrice(i));
+            buffer.putInt(snapshot.getBuyVolume(i));
+        }
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            buffer.putInt(snapshot.getSellPrice(i));
+            buffer.putInt(snapshot.getSellVolume(i));
+        }
+        crc.reset();
+        crc.update(buffer.array(), 0, RECORD_SIZE - 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        segmentRecords++;
+        unsyncedRecords++;
+
+        // batch the syncs, along with the periodic one a crash loses about a second of updates at most
+        if (unsyncedRecords >= SYNC_RECORDS || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL) {
+            sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        syncTask.cancel(false);
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /* Internal */
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(file -> {
+                    final String name = file.getFileName().toString();
+
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                })
+                .sorted()
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private void openSegment(long segment, int records) throws IOException {
+        final Path path = directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+
+        Files.createDirectories(directory);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // drop any torn record at the end of the segment
+        this.channel.truncate((long) records * RECORD_SIZE);
+        this.channel.position((long) records * RECORD_SIZE);
+        this.segment = segment;
+        this.segmentRecords = records;
+        this.unsyncedRecords = 0;
+        this.lastSync = System.currentTimeMillis();
+    }
+
+    private void sync() throws IOException {
+        if (unsyncedRecords != 0) {
+            channel.force(false);
+            unsyncedRecords = 0;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    private synchronized void syncIfStale() {
+        if (channel == null || System.currentTimeMillis() - lastSync < SYNC_INTERVAL) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            log.error("Failed to sync the market history log", e);
+        }
+    }
+
+    private static long segmentIndex(Path segment) {
+        final String name = segment.getFileName().toString();
+
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void prices(ByteBuffer buffer, int offset, int[] prices) {
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            prices[i] = buffer.getInt(offset + (i * 8));
+        }
+    }
+
+    private static int depth(ByteBuffer buffer, int offset) {
+        int depth = 0;
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            depth += buffer.getInt(offset + (i * 8) + 4);
+        }
+        return depth;
+    }
+
+    private static MarketSnapshot readSnapshot(ByteBuffer buffer) {
+        final long version = buffer.getLong();
+        final long receivedAt = buffer.getLong();
+        final int lastPrice = buffer.getInt();
+        final int[] buyPrices = new int[MarketSnapshot.DEPTH];
+        final int[] buyVolumes = new int[MarketSnapshot.DEPTH];
+        final int[] sellPrices = new int[MarketSnapshot.DEPTH];
+        final int[] sellVolumes = new int[MarketSnapshot.DEPTH];
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            buyPrices[i] = buffer.getInt();
+            buyVolumes[i] = buffer.getInt();
+        }
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            sellPrices[i] = buffer.getInt();
+            sellVolumes[i] = buffer.getInt();
+        }
+        return new MarketSnapshot(version, receivedAt, lastPrice, buyPrices, buyVolumes, sellPrices, sellVolumes);
+    }
+
+    private static final class SyncThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        /* Methods */
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "history-sync-" + count.incrementAndGet());
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
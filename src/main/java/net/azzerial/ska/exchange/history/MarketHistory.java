@@ -0,0 +1,317 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.exchange.history;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.javalin.http.ContentType;
+import net.azzerial.ska.exchange.MarketConsumer;
+import net.azzerial.ska.exchange.MarketSnapshot;
+import net.azzerial.ska.exchange.Payload;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+public final class MarketHistory implements MarketConsumer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // the retention, ~30 days of updates at one update every 2.5 seconds, ~28 MB per region
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final int capacity;
+    private final StampedLock lock = new StampedLock();
+    // columns, indexed by record position modulo the capacity
+    private final long[] timestamps;
+    private final int[] lastPrices;
+    private final int[] bestBuyPrices;
+    private final int[] bestSellPrices;
+    private final int[] buyDepths;
+    private final int[] sellDepths;
+    // the total amount of records ever appended
+    private long count;
+
+    /* Constructors */
+
+    public MarketHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MarketHistory(int capacity) {
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.lastPrices = new int[capacity];
+        this.bestBuyPrices = new int[capacity];
+        this.bestSellPrices = new int[capacity];
+        this.buyDepths = new int[capacity];
+        this.sellDepths = new int[capacity];
+    }
+
+    /* Getters */
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /* Methods */
+
+    @Override
+    public void onMarketSnapshot(@NotNull MarketSnapshot snapshot) {
+        int buyDepth = 0;
+        int sellDepth = 0;
+
+        for (int i = 0; i != MarketSnapshot.DEPTH; i++) {
+            buyDepth += snapshot.getBuyVolume(i);
+            sellDepth += snapshot.getSellVolume(i);
+        }
+        append(
+            snapshot.getReceivedAt(),
+            snapshot.getLastPrice(),
+            snapshot.getBestBuyPrice(),
+            snapshot.getBestSellPrice(),
+            buyDepth,
+            sellDepth
+        );
+    }
+
+    public void append(long timestamp, int lastPrice, int bestBuyPrice, int bestSellPrice, int buyDepth, int sellDepth) {
+        final long stamp = lock.writeLock();
+
+        try {
+            final int index = (int) (count % capacity);
+
+            // keep the timestamps sorted even if the wall clock goes backwards
+            if (count != 0) {
+                timestamps[index] = Math.max(timestamp, timestamps[(int) ((count - 1) % capacity)]);
+            } else {
+                timestamps[index] = timestamp;
+            }
+            lastPrices[index] = lastPrice;
+            bestBuyPrices[index] = bestBuyPrice;
+            bestSellPrices[index] = bestSellPrice;
+            buyDepths[index] = buyDepth;
+            sellDepths[index] = sellDepth;
+            count++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Candles query(long from, long to, long step) {
+        final Candles candles = new Candles(from, step, (int) Math.max(0, Math.floorDiv(to - from + step - 1, step)));
+
+        // readers don't block the writer, the query is redone if it raced with it
+        final long stamp = lock.tryOptimisticRead();
+
+        fill(candles, from, to, step);
+        if (lock.validate(stamp)) {
+            return candles;
+        }
+
+        final long readStamp = lock.readLock();
+
+        try {
+            candles.clear();
+            fill(candles, from, to, step);
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+        return candles;
+    }
+
+    /* Internal */
+
+    private void fill(Candles candles, long from, long to, long step) {
+        final long count = this.count;
+        final long first = Math.max(0, count - capacity);
+        long position = lowerBound(first, count, from);
+
+        for (; position < count; position++) {
+            final int index = (int) (position % capacity);
+            final long timestamp = timestamps[index];
+
+            if (timestamp >= to) {
+                break;
+            }
+            // an optimistic read may observe a record being overwritten
+            if (timestamp < from) {
+                continue;
+            }
+            candles.add(
+                (int) ((timestamp - from) / step),
+                timestamp,
+                lastPrices[index],
+                bestBuyPrices[index],
+                bestSellPrices[index],
+                buyDepths[index],
+                sellDepths[index]
+            );
+        }
+    }
+
+    private long lowerBound(long low, long high, long timestamp) {
+        // the first position holding a timestamp greater or equal to the given one
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+
+            if (timestamps[(int) (middle % capacity)] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public static final class Candles {
+
+        public final long from;
+        public final long step;
+        public final int[] counts;
+        public final int[] open;
+        public final int[] high;
+        public final int[] low;
+        public final int[] close;
+        public final int[] bestBuyPrices;
+        public final int[] bestSellPrices;
+        public final long[] buyDepthSums;
+        public final int[] buyDepthMins;
+        public final int[] buyDepthMaxs;
+        public final long[] sellDepthSums;
+        public final int[] sellDepthMins;
+        public final int[] sellDepthMaxs;
+
+        /* Constructors */
+
+        private Candles(long from, long step, int size) {
+            this.from = from;
+            this.step = step;
+            this.counts = new int[size];
+            this.open = new int[size];
+            this.high = new int[size];
+            this.low = new int[size];
+            this.close = new int[size];
+            this.bestBuyPrices = new int[size];
+            this.bestSellPrices = new int[size];
+            this.buyDepthSums = new long[size];
+            this.buyDepthMins = new int[size];
+            this.buyDepthMaxs = new int[size];
+            this.sellDepthSums = new long[size];
+            this.sellDepthMins = new int[size];
+            this.sellDepthMaxs = new int[size];
+        }
+
+        /* Getters */
+
+        public int size() {
+            return counts.length;
+        }
+
+        /* Methods */
+
+        public Payload toPayload() {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(64 + (size() * 192));
+
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeNumberField("from", from);
+                generator.writeNumberField("to", from + (step * size()));
+                generator.writeNumberField("step", step);
+                generator.writeArrayFieldStart("candles");
+                for (int i = 0; i != size(); i++) {
+                    // skip the periods without any update
+                    if (counts[i] == 0) {
+                        continue;
+                    }
+                    generator.writeStartObject();
+                    generator.writeNumberField("time", from + (step * i));
+                    generator.writeNumberField("count", counts[i]);
+                    // left out when no update of the period had a last price
+                    if (open[i] > 0) {
+                        generator.writeNumberField("open", open[i]);
+                        generator.writeNumberField("high", high[i]);
+                        generator.writeNumberField("low", low[i]);
+                        generator.writeNumberField("close", close[i]);
+                    }
+                    generator.writeNumberField("bestBuyPrice", bestBuyPrices[i]);
+                    generator.writeNumberField("bestSellPrice", bestSellPrices[i]);
+                    writeDepth(generator, "buyDepth", buyDepthSums[i] / counts[i], buyDepthMins[i], buyDepthMaxs[i]);
+                    writeDepth(generator, "sellDepth", sellDepthSums[i] / counts[i], sellDepthMins[i], sellDepthMaxs[i]);
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to serialize the market history", e);
+            }
+            return Payload.of(out.toByteArray(), ContentType.APPLICATION_JSON.getMimeType());
+        }
+
+        /* Internal */
+
+        private static void writeDepth(JsonGenerator generator, String name, long average, int min, int max) throws IOException {
+            generator.writeObjectFieldStart(name);
+            generator.writeNumberField("avg", average);
+            generator.writeNumberField("min", min);
+            generator.writeNumberField("max", max);
+            generator.writeEndObject();
+        }
+
+        private void add(int bucket, long timestamp, int lastPrice, int bestBuyPrice, int bestSellPrice, int buyDepth, int sellDepth) {
+            if (counts[bucket] == 0) {
+                buyDepthMins[bucket] = buyDepth;
+                buyDepthMaxs[bucket] = buyDepth;
+                sellDepthMins[bucket] = sellDepth;
+                sellDepthMaxs[bucket] = sellDepth;
+            } else {
+                buyDepthMins[bucket] = Math.min(buyDepthMins[bucket], buyDepth);
+                buyDepthMaxs[bucket] = Math.max(buyDepthMaxs[bucket], buyDepth);
+                sellDepthMins[bucket] = Math.min(sellDepthMins[bucket], sellDepth);
+                sellDepthMaxs[bucket] = Math.max(sellDepthMaxs[bucket], sellDepth);
+            }
+
+            // the updates without a trade or of an empty market have no price, they only count for the depth
+            if (lastPrice > 0) {
+                if (open[bucket] == 0) {
+                    open[bucket] = lastPrice;
+                    high[bucket] = lastPrice;
+                    low[bucket] = lastPrice;
+                } else {
+                    high[bucket] = Math.max(high[bucket], lastPrice);
+                    low[bucket] = Math.min(low[bucket], lastPrice);
+                }
+                close[bucket] = lastPrice;
+            }
+            bestBuyPrices[bucket] = bestBuyPrice;
+            bestSellPrices[bucket] = bestSellPrice;
+            buyDepthSums[bucket] += buyDepth;
+            sellDepthSums[bucket] += sellDepth;
+            counts[bucket]++;
+        }
+
+        private void clear() {
+            Arrays.fill(counts, 0);
+            Arrays.fill(open, 0);
+            Arrays.fill(buyDepthSums, 0);
+            Arrays.fill(sellDepthSums, 0);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class LatencyHistogram implements Metric {
+
+    // values below 2^10 ns (~1 us) share the first bucket, values above 2^36 ns (~69 s) the last one
+    private static final int MIN_EXPONENT = 10;
+    private static final int MAX_EXPONENT = 36;
+    // each power of two is split into 4 linear sub-buckets, ~25% precision
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 1 + ((MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS) + 1;
+    // the per-stripe slots, following the buckets
+    private static final int COUNT_SLOT = BUCKETS;
+    private static final int SUM_SLOT = BUCKETS + 1;
+    private static final int SLOTS = BUCKETS + 2;
+    // recording threads are spread over the stripes to avoid contention
+    private static final int STRIPES = 16;
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    /* Constructors */
+
+    LatencyHistogram() {
+        for (int i = 0; i != STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(SLOTS);
+        }
+    }
+
+    /* Methods */
+
+    public void record(long nanos) {
+        final AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+
+        stripe.incrementAndGet(index(Math.max(0, nanos)));
+        stripe.incrementAndGet(COUNT_SLOT);
+        stripe.addAndGet(SUM_SLOT, Math.max(0, nanos));
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        final long[] buckets = new long[SLOTS];
+
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i != SLOTS; i++) {
+                buckets[i] += stripe.get(i);
+            }
+        }
+
+        final String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        long cumulative = 0;
+
+        for (int i = 0; i != BUCKETS - 1; i++) {
+            cumulative += buckets[i];
+            out.append(name).append("_bucket").append(prefix).append("le=\"").append(upperBound(i) / 1e9).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[BUCKETS - 1];
+        out.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum").append(labels).append(' ').append(buckets[SUM_SLOT] / 1e9).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(buckets[COUNT_SLOT]).append('\n');
+    }
+
+    /* Internal */
+
+    private static int index(long nanos) {
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+
+        if (exponent < MIN_EXPONENT) {
+            return 0;
+        }
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        final int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return 1 + ((exponent - MIN_EXPONENT) * SUB_BUCKETS) + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index == 0) {
+            return 1L << MIN_EXPONENT;
+        }
+
+        final int exponent = MIN_EXPONENT + ((index - 1) / SUB_BUCKETS);
+        final int subBucket = (index - 1) % SUB_BUCKETS;
+
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+}
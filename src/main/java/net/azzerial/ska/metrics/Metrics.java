@@ -0,0 +1,126 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+public final class Metrics {
+
+    private static final Map<String, Family> FAMILIES = new TreeMap<>();
+
+    /* Constructors */
+
+    private Metrics() {}
+
+    /* Methods */
+
+    public static Counter counter(String name, String help, String... labels) {
+        final Counter counter = new Counter();
+
+        register(name, help, "counter", labels, counter);
+        return counter;
+    }
+
+    public static void counter(String name, String help, LongSupplier supplier, String... labels) {
+        register(name, help, "counter", labels, (out, metricName, metricLabels) ->
+            out.append(metricName).append(metricLabels).append(' ').append(supplier.getAsLong()).append('\n')
+        );
+    }
+
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        register(name, help, "histogram", labels, histogram);
+        return histogram;
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        register(name, help, "gauge", labels, (out, metricName, metricLabels) ->
+            out.append(metricName).append(metricLabels).append(' ').append(supplier.getAsDouble()).append('\n')
+        );
+    }
+
+    public static String scrape() {
+        final StringBuilder out = new StringBuilder(16 * 1024);
+
+        synchronized (FAMILIES) {
+            for (Family family : FAMILIES.values()) {
+                out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+                out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+                for (int i = 0; i != family.metrics.size(); i++) {
+                    family.metrics.get(i).write(out, family.name, family.labels.get(i));
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    /* Internal */
+
+    private static void register(String name, String help, String type, String[] labels, Metric metric) {
+        synchronized (FAMILIES) {
+            final Family family = FAMILIES.computeIfAbsent(name, key -> new Family(name, help, type));
+
+            if (!family.type.equals(type)) {
+                throw new IllegalArgumentException("Metric '" + name + "' is already registered as a " + family.type);
+            }
+            family.labels.add(labels(labels));
+            family.metrics.add(metric);
+        }
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as key and value pairs");
+        }
+
+        final StringBuilder out = new StringBuilder("{");
+
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i != 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static final class Family {
+
+        private final String name;
+        private final String help;
+        private final String type;
+        private final List<String> labels = new ArrayList<>();
+        private final List<Metric> metrics = new ArrayList<>();
+
+        /* Constructors */
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2025 Robin Mercier (azzerial)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.azzerial.ska.metrics;
+
+import io.javalin.config.JavalinConfig;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import io.javalin.openapi.*;
+import io.javalin.plugin.Plugin;
+import net.azzerial.ska.exchange.ExchangeListener;
+import net.azzerial.ska.exchange.ExchangeRegions;
+import net.azzerial.ska.exchange.MarketSnapshot;
+import net.azzerial.skhc.enums.Region;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class MetricsPlugin extends Plugin<Void> {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Map<Region, ExchangeListener> exchanges;
+    private final Map<String, LatencyHistogram> routeLatencies = new ConcurrentHashMap<>();
+
+    /* Constructors */
+
+    public MetricsPlugin(Map<Region, ExchangeListener> exchanges) {
+        this.exchanges = exchanges;
+    }
+
+    /* Methods */
+
+    @Override
+    public void onInitialize(@NotNull JavalinConfig config) {
+        registerJvmMetrics();
+        registerMarketMetrics();
+
+        // time every request, per matched route
+        config.requestLogger.http(this::recordRequest);
+
+        // register the route to scrape the metrics
+        config.router.mount(router -> router.get("metrics", this::handleMetrics));
+    }
+
+    /* Routes */
+
+    @OpenApi(
+        path = "metrics",
+        methods = HttpMethod.GET,
+        description = "Get the service metrics in the Prometheus text format.",
+        operationId = "metrics",
+        tags = { "Metrics" },
+        responses = {
+            @OpenApiResponse(
+                status = "200",
+                description = "The service metrics.",
+                content = {
+                    @OpenApiContent(
+                        from = String.class,
+                        mimeType = "text/plain"
+                    )
+                }
+            )
+        }
+    )
+    private void handleMetrics(Context ctx) {
+        ctx.contentType(CONTENT_TYPE);
+        ctx.result(Metrics.scrape());
+    }
+
+    /* Internal */
+
+    private void recordRequest(Context ctx, Float executionTimeMs) {
+        // unmatched paths would give the metrics an unbounded cardinality
+        if (ctx.statusCode() == HttpStatus.NOT_FOUND.getCode()) {
+            return;
+        }
+
+        final String route = ctx.endpointHandlerPath();
+        LatencyHistogram histogram = routeLatencies.get(route);
+
+        if (histogram == null) {
+            histogram = routeLatencies.computeIfAbsent(route, key ->
+                Metrics.histogram("ska_http_request_duration_seconds", "Time spent handling the HTTP requests.", "route", key)
+            );
+        }
+        histogram.record((long) (executionTimeMs * 1_000_000));
+    }
+
+    private void registerMarketMetrics() {
+        exchanges.forEach((region, exchange) -> {
+            final String name = ExchangeRegions.name(region);
+
+            Metrics.gauge("ska_market_age_seconds", "Time elapsed since the current market was received.", () -> {
+                final MarketSnapshot snapshot = exchange.getSnapshot();
+
+                return snapshot == null ? Double.NaN : (System.currentTimeMillis() - snapshot.getReceivedAt()) / 1e3;
+            }, "region", name);
+            Metrics.gauge("ska_market_version", "Version of the current market.", () -> {
+                final MarketSnapshot snapshot = exchange.getSnapshot();
+
+                return snapshot == null ? 0 : snapshot.getVersion();
+            }, "region", name);
+        });
+    }
+
+    private static void registerJvmMetrics() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        Metrics.gauge("jvm_memory_heap_used_bytes", "Used heap memory.", () -> memory.getHeapMemoryUsage().getUsed());
+        Metrics.gauge("jvm_memory_heap_committed_bytes", "Committed heap memory.", () -> memory.getHeapMemoryUsage().getCommitted());
+        Metrics.gauge("jvm_threads_live", "Live threads.", threads::getThreadCount);
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            Metrics.counter("jvm_gc_collections_total", "Garbage collections.", collector::getCollectionCount, "collector", collector.getName());
+            Metrics.counter("jvm_gc_collection_milliseconds_total", "Time spent in garbage collections.", collector::getCollectionTime, "collector", collector.getName());
+        }
+
+        // the HotSpot extension exposes the bytes allocated by each thread
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                Metrics.gauge("jvm_threads_allocated_bytes", "Bytes allocated by the live threads since they started.", () -> {
+                    long total = 0;
+
+                    for (long allocated : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                        total += Math.max(0, allocated);
+                    }
+                    return total;
+                });
+            }
+        }
+    }
+}